@@ -0,0 +1,580 @@
+package msc;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Necessity distances from every class to each of its ancestors.
+ * The row of a class lists its ancestor ids in increasing order with the
+ * distance to each one and the first class after the source on the
+ * shortest path (its hop), all rows stored back to back.
+ *
+ * The subClassOf graph is a DAG, so the rows are filled by dynamic
+ * programming in topological order: once the rows of the parents of a
+ * class are known its own row is their merge. When the graph has a cycle
+ * the rows are computed with one Dijkstra per class instead.
+ *
+ * The arrays are held in NIO buffers, either on the heap or mapped from
+ * a file written by DistanceStore. A mapping holds at most 2 GB, so each
+ * array is cut in segments of 1 << SEGMENT_BITS values.
+ *
+ * update() does not copy the rows it keeps: the rows it merges again are
+ * appended after the stored ones, in a Patch that also gives where each
+ * row starts. Entries are numbered across the two, so the accessors read
+ * both alike. Successive updates append to the arrays of the same patch,
+ * and the rows are stored back to back again once the appended entries
+ * outnumber the stored ones, so an update costs its merged rows.
+ */
+public class AncestorDistances {
+
+	// appended entries below which rows are never stored back to back again
+	private static final int COMPACT_MIN = 1 << 16;
+	// values of a segment, 1 GB of ints or floats
+	static final int SEGMENT_BITS = 28;
+
+	private final int segmentBits, segmentMask;
+	private final IntBuffer[] offsets;
+	private final IntBuffer[] ancestors;
+	private final FloatBuffer[] distances;
+	private final IntBuffer[] hops;
+	// classes and entries stored back to back, the entries after them are in the patch
+	private final int size, stored;
+	private final Patch patch;
+
+	public AncestorDistances(int[] offsets, int[] ancestors, float[] distances, int[] hops) {
+		this(IntBuffer.wrap(offsets), IntBuffer.wrap(ancestors), FloatBuffer.wrap(distances), IntBuffer.wrap(hops));
+	}
+
+	public AncestorDistances(IntBuffer offsets, IntBuffer ancestors, FloatBuffer distances, IntBuffer hops) {
+		this(SEGMENT_BITS, segments(offsets, SEGMENT_BITS), segments(ancestors, SEGMENT_BITS), segments(distances, SEGMENT_BITS), segments(hops, SEGMENT_BITS));
+	}
+
+	// Arrays given in segments of 1 << segmentBits values, the last one possibly shorter
+	AncestorDistances(int segmentBits, IntBuffer[] offsets, IntBuffer[] ancestors, FloatBuffer[] distances, IntBuffer[] hops) {
+		this(segmentBits, offsets, ancestors, distances, hops, null);
+	}
+
+	private AncestorDistances(int segmentBits, IntBuffer[] offsets, IntBuffer[] ancestors, FloatBuffer[] distances, IntBuffer[] hops, Patch patch) {
+		this.segmentBits = segmentBits;
+		this.segmentMask = (1 << segmentBits) - 1;
+		this.offsets = offsets;
+		this.ancestors = ancestors;
+		this.distances = distances;
+		this.hops = hops;
+		this.size = length(offsets, segmentBits) - 1;
+		this.stored = length(ancestors, segmentBits);
+		this.patch = patch;
+	}
+
+	// Views of the values of buffer by segments of 1 << segmentBits
+	private static IntBuffer[] segments(IntBuffer buffer, int segmentBits) {
+		IntBuffer[] segments = new IntBuffer[Math.max(1, (buffer.limit() + (1 << segmentBits) - 1) >>> segmentBits)];
+		for (int s = 0; s < segments.length; s++) {
+			int start = s << segmentBits;
+			segments[s] = buffer.duplicate().position(start).limit(Math.min(buffer.limit(), start + (1 << segmentBits))).slice();
+		}
+		return segments;
+	}
+
+	private static FloatBuffer[] segments(FloatBuffer buffer, int segmentBits) {
+		FloatBuffer[] segments = new FloatBuffer[Math.max(1, (buffer.limit() + (1 << segmentBits) - 1) >>> segmentBits)];
+		for (int s = 0; s < segments.length; s++) {
+			int start = s << segmentBits;
+			segments[s] = buffer.duplicate().position(start).limit(Math.min(buffer.limit(), start + (1 << segmentBits))).slice();
+		}
+		return segments;
+	}
+
+	private static int length(Buffer[] segments, int segmentBits) {
+		return ((segments.length - 1) << segmentBits) + segments[segments.length - 1].limit();
+	}
+
+	public static AncestorDistances compute(HierarchyGraph graph) {
+		return compute(graph, null);
+	}
+
+	/* Rows that do not depend on each other are computed concurrently on pool
+	 * (sequentially when pool is null). With dynamic programming these are the
+	 * classes at the same level, i.e. the same longest distance in edges from a
+	 * root, since a row only reads the rows of the parents. Every task writes
+	 * the rows of its own classes so they are merged without locking.
+	 */
+	public static AncestorDistances compute(HierarchyGraph graph, ForkJoinPool pool) {
+		int n = graph.size();
+		int[] order = topologicalOrder(graph);
+		Rows rows = new Rows(graph, order == null);
+
+		if (order == null) {
+			order = new int[n];
+			for (int v = 0; v < n; v++)
+				order[v] = v;
+			rows.compute(order, 0, n, pool);
+		}
+		else if (pool == null)
+			rows.compute(order, 0, n, null);
+		else {
+			int[] level = new int[n];
+			int levels = 1;
+			for (int v : order)
+				for (int e = graph.getEdgesStart(v); e < graph.getEdgesEnd(v); e++) {
+					level[v] = Math.max(level[v], level[graph.getTarget(e)] + 1);
+					levels = Math.max(levels, level[v] + 1);
+				}
+
+			int[] start = new int[levels + 1];
+			for (int v = 0; v < n; v++)
+				start[level[v] + 1]++;
+			for (int l = 0; l < levels; l++)
+				start[l + 1] += start[l];
+			int[] next = Arrays.copyOf(start, levels);
+			int[] byLevel = new int[n];
+			for (int v : order)
+				byLevel[next[level[v]]++] = v;
+
+			for (int l = 0; l < levels; l++)
+				rows.compute(byLevel, start[l], start[l + 1], pool);
+		}
+		return fromRows(rows.ancestors, rows.distances, rows.hops);
+	}
+
+	/* Distances of a graph that differs from the one of previous only by the
+	 * edges leaving the affected classes, which must include every class whose
+	 * ancestors changed, and by classes appended after the previous ones.
+	 * The affected rows are merged again in the topological order of graph
+	 * and appended to the patch of previous, the other rows are shared.
+	 */
+	static AncestorDistances update(HierarchyGraph graph, int[] order, AncestorDistances previous, boolean[] affected) {
+		int n = graph.size();
+		Rows rows = new Rows(graph, false);
+		Scratch scratch = new Scratch(n);
+		long merged = 0, relaxed = 0;
+		int added = 0, removed = 0;
+		for (int v : order)
+			if (affected[v]) {
+				relaxed += rows.merge(v, scratch, previous, affected);
+				merged++;
+				added += rows.ancestors[v].length;
+				if (v < previous.size())
+					removed += previous.getRowEnd(v) - previous.getRowStart(v);
+			}
+		Rows.MERGED.add(merged);
+		Rows.RELAXED.add(relaxed);
+
+		int appended = previous.patch == null ? 0 : previous.patch.size;
+		if ((long) appended + added > Math.max(previous.stored, COMPACT_MIN))
+			return flatten(n, previous, rows, affected);
+
+		Patch patch = Patch.append(previous.patch, appended + added, previous.stored);
+		int[] starts = new int[n], ends = new int[n];
+		for (int v = 0, next = appended; v < n; v++)
+			if (affected[v]) {
+				int count = rows.ancestors[v].length;
+				System.arraycopy(rows.ancestors[v], 0, patch.ancestors, next, count);
+				System.arraycopy(rows.distances[v], 0, patch.distances, next, count);
+				System.arraycopy(rows.hops[v], 0, patch.hops, next, count);
+				starts[v] = previous.stored + next;
+				ends[v] = starts[v] + count;
+				next += count;
+			}
+			else {
+				starts[v] = previous.getRowStart(v);
+				ends[v] = previous.getRowEnd(v);
+			}
+		patch = new Patch(patch, starts, ends, previous.getPairsNumber() - removed + added);
+		return new AncestorDistances(previous.segmentBits, previous.offsets, previous.ancestors, previous.distances, previous.hops, patch);
+	}
+
+	// Same rows stored back to back, this when they already are
+	AncestorDistances compact() {
+		return patch == null ? this : flatten(size(), this, null, null);
+	}
+
+	// Rows of the affected classes taken from rows, the others from previous, stored back to back
+	private static AncestorDistances flatten(int n, AncestorDistances previous, Rows rows, boolean[] affected) {
+		int[] offsets = new int[n + 1];
+		for (int v = 0; v < n; v++)
+			offsets[v + 1] = offsets[v] + (affected != null && affected[v] ? rows.ancestors[v].length : previous.getRowEnd(v) - previous.getRowStart(v));
+
+		int[] ancestors = new int[offsets[n]];
+		float[] distances = new float[offsets[n]];
+		int[] hops = new int[offsets[n]];
+		for (int v = 0; v < n; v++) {
+			int count = offsets[v + 1] - offsets[v];
+			if (affected != null && affected[v]) {
+				System.arraycopy(rows.ancestors[v], 0, ancestors, offsets[v], count);
+				System.arraycopy(rows.distances[v], 0, distances, offsets[v], count);
+				System.arraycopy(rows.hops[v], 0, hops, offsets[v], count);
+			}
+			else
+				previous.copyRow(v, ancestors, distances, hops, offsets[v]);
+		}
+		return new AncestorDistances(offsets, ancestors, distances, hops);
+	}
+
+	// Copy the entries of the row of v at position at of the arrays
+	private void copyRow(int v, int[] toAncestors, float[] toDistances, int[] toHops, int at) {
+		int start = getRowStart(v), count = getRowEnd(v) - start;
+		if (start >= stored) {
+			System.arraycopy(patch.ancestors, start - stored, toAncestors, at, count);
+			System.arraycopy(patch.distances, start - stored, toDistances, at, count);
+			System.arraycopy(patch.hops, start - stored, toHops, at, count);
+		}
+		else
+			// a row may start in one segment and end in the next
+			for (int copied = 0, length; copied < count; copied += length) {
+				int entry = start + copied, segment = entry >>> segmentBits, offset = entry & segmentMask;
+				length = Math.min(count - copied, ancestors[segment].limit() - offset);
+				ancestors[segment].duplicate().position(offset).get(toAncestors, at + copied, length);
+				distances[segment].duplicate().position(offset).get(toDistances, at + copied, length);
+				hops[segment].duplicate().position(offset).get(toHops, at + copied, length);
+			}
+	}
+
+	// Classes ordered so that superclasses come before their subclasses, null if there is a cycle
+	static int[] topologicalOrder(HierarchyGraph graph) {
+		int n = graph.size();
+		HierarchyGraph children = graph.reverse();
+		int[] remaining = new int[n];
+		int[] order = new int[n];
+		int head = 0, tail = 0;
+
+		for (int v = 0; v < n; v++) {
+			remaining[v] = graph.getEdgesEnd(v) - graph.getEdgesStart(v);
+			if (remaining[v] == 0)
+				order[tail++] = v;
+		}
+		while (head < tail) {
+			int v = order[head++];
+			for (int e = children.getEdgesStart(v); e < children.getEdgesEnd(v); e++)
+				if (--remaining[children.getTarget(e)] == 0)
+					order[tail++] = children.getTarget(e);
+		}
+		return tail == n ? order : null;
+	}
+
+
+	// Rows being computed, filled either by merging parent rows or by Dijkstra
+	private static class Rows {
+
+		private static final int THRESHOLD = 64;
+		private static final Metrics.Counter MERGED = Metrics.counter("ancestors.rows");
+		private static final Metrics.Counter RELAXED = Metrics.counter("ancestors.relaxed");
+
+		private final HierarchyGraph graph;
+		private final int[][] ancestors;
+		private final float[][] distances;
+		private final int[][] hops;
+		private final HierarchyGraph.DijkstraShortestPath shortestPath;
+		private final ConcurrentLinkedQueue<Scratch> scratches = new ConcurrentLinkedQueue<>();
+
+		Rows(HierarchyGraph graph, boolean dijkstra) {
+			int n = graph.size();
+			this.graph = graph;
+			this.ancestors = new int[n][];
+			this.distances = new float[n][];
+			this.hops = new int[n][];
+			this.shortestPath = dijkstra ? new HierarchyGraph.DijkstraShortestPath(graph) : null;
+		}
+
+		// Compute the rows of classes[from..to[
+		void compute(int[] classes, int from, int to, ForkJoinPool pool) {
+			if (pool == null || to - from <= THRESHOLD)
+				computeRange(classes, from, to);
+			else
+				pool.invoke(new RowsTask(this, classes, from, to));
+		}
+
+		// the searches count themselves in dijkstra.settled and dijkstra.relaxed, merges are counted by range
+		void computeRange(int[] classes, int from, int to) {
+			if (shortestPath != null) {
+				for (int i = from; i < to; i++)
+					search(classes[i]);
+				return;
+			}
+			Scratch scratch = scratches.poll();
+			if (scratch == null)
+				scratch = new Scratch(graph.size());
+			long relaxed = 0;
+			for (int i = from; i < to; i++)
+				relaxed += merge(classes[i], scratch);
+			scratches.offer(scratch);
+			MERGED.add(to - from);
+			RELAXED.add(relaxed);
+		}
+
+		private long merge(int v, Scratch scratch) {
+			return merge(v, scratch, null, null);
+		}
+
+		// Merge the rows of the parents of v, the rows of the parents not computed being read from previous; returns the entries relaxed
+		long merge(int v, Scratch scratch, AncestorDistances previous, boolean[] computed) {
+			int count = 0;
+			long relaxed = 0;
+			for (int e = graph.getEdgesStart(v); e < graph.getEdgesEnd(v); e++) {
+				int parent = graph.getTarget(e);
+				float weight = graph.getWeight(e);
+
+				count = scratch.relax(parent, weight, parent, count);
+				if (computed == null || computed[parent]) {
+					int[] up = ancestors[parent];
+					float[] upDistances = distances[parent];
+					for (int k = 0; k < up.length; k++)
+						count = scratch.relax(up[k], weight + upDistances[k], parent, count);
+					relaxed += 1 + up.length;
+				}
+				else {
+					for (int k = previous.getRowStart(parent); k < previous.getRowEnd(parent); k++)
+						count = scratch.relax(previous.getAncestor(k), weight + previous.getDistance(k), parent, count);
+					relaxed += 1 + previous.getRowEnd(parent) - previous.getRowStart(parent);
+				}
+			}
+
+			int[] row = Arrays.copyOf(scratch.touched, count);
+			Arrays.sort(row);
+			ancestors[v] = row;
+			distances[v] = new float[count];
+			hops[v] = new int[count];
+			for (int k = 0; k < count; k++) {
+				distances[v][k] = scratch.best[row[k]];
+				hops[v][k] = scratch.bestHop[row[k]];
+				scratch.best[row[k]] = Float.MAX_VALUE;
+			}
+			return relaxed;
+		}
+
+		private void search(int source) {
+			try (HierarchyGraph.SearchState state = shortestPath.computeShortestPaths(source)) {
+				int[] reached = new int[state.getReachedNumber() - 1];
+				for (int i = 1; i < state.getReachedNumber(); i++)
+					reached[i - 1] = state.getReached(i);
+				Arrays.sort(reached);
+
+				ancestors[source] = reached;
+				distances[source] = new float[reached.length];
+				hops[source] = new int[reached.length];
+				for (int k = 0; k < reached.length; k++) {
+					distances[source][k] = state.getDistance(reached[k]);
+					hops[source][k] = state.getShortestPathTo(reached[k])[1];
+				}
+			}
+		}
+	}
+
+
+	private static class RowsTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Rows rows;
+		private final int[] classes;
+		private final int from, to;
+
+		RowsTask(Rows rows, int[] classes, int from, int to) {
+			this.rows = rows;
+			this.classes = classes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= Rows.THRESHOLD)
+				rows.computeRange(classes, from, to);
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RowsTask(rows, classes, from, middle), new RowsTask(rows, classes, middle, to));
+			}
+		}
+	}
+
+
+	// Best distance found so far to each ancestor while merging the rows of the parents
+	private static class Scratch {
+
+		private final float[] best;
+		private final int[] bestHop;
+		private final int[] touched;
+
+		Scratch(int n) {
+			best = new float[n];
+			bestHop = new int[n];
+			touched = new int[n];
+			Arrays.fill(best, Float.MAX_VALUE);
+		}
+
+		int relax(int ancestor, float distance, int hop, int count) {
+			if (best[ancestor] == Float.MAX_VALUE)
+				touched[count++] = ancestor;
+			else if (distance >= best[ancestor])
+				return count;
+			best[ancestor] = distance;
+			bestHop[ancestor] = hop;
+			return count;
+		}
+	}
+
+	private static AncestorDistances fromRows(int[][] rowAncestors, float[][] rowDistances, int[][] rowHops) {
+		int n = rowAncestors.length;
+		int[] offsets = new int[n + 1];
+		for (int v = 0; v < n; v++)
+			offsets[v + 1] = offsets[v] + rowAncestors[v].length;
+
+		int[] ancestors = new int[offsets[n]];
+		float[] distances = new float[offsets[n]];
+		int[] hops = new int[offsets[n]];
+		for (int v = 0; v < n; v++) {
+			System.arraycopy(rowAncestors[v], 0, ancestors, offsets[v], rowAncestors[v].length);
+			System.arraycopy(rowDistances[v], 0, distances, offsets[v], rowDistances[v].length);
+			System.arraycopy(rowHops[v], 0, hops, offsets[v], rowHops[v].length);
+		}
+		return new AncestorDistances(offsets, ancestors, distances, hops);
+	}
+
+	public int size() {
+		return patch == null ? size : patch.starts.length;
+	}
+
+	// Whether the rows are mapped from a file rather than held on the heap
+	boolean isMapped() {
+		return ancestors[0].isDirect();
+	}
+
+	// Number of (class, ancestor) pairs
+	public int getPairsNumber() {
+		return patch == null ? stored : patch.pairs;
+	}
+
+	public int getRowStart(int source) {
+		return patch == null ? offsets[source >>> segmentBits].get(source & segmentMask) : patch.starts[source];
+	}
+
+	public int getRowEnd(int source) {
+		return patch == null ? offsets[source + 1 >>> segmentBits].get(source + 1 & segmentMask) : patch.ends[source];
+	}
+
+	public int getAncestor(int entry) {
+		return entry < stored ? ancestors[entry >>> segmentBits].get(entry & segmentMask) : patch.ancestors[entry - stored];
+	}
+
+	public float getDistance(int entry) {
+		return entry < stored ? distances[entry >>> segmentBits].get(entry & segmentMask) : patch.distances[entry - stored];
+	}
+
+	public int getHop(int entry) {
+		return entry < stored ? hops[entry >>> segmentBits].get(entry & segmentMask) : patch.hops[entry - stored];
+	}
+
+	// Entry of target in the row of source, -1 if target is not an ancestor of source
+	public int find(int source, int target) {
+		int start = getRowStart(source), end = getRowEnd(source);
+		if (start == end)
+			return -1;
+		if (start >= stored) {
+			// a patched row, searched in the array of the patch without wrapping it
+			int entry = Arrays.binarySearch(patch.ancestors, start - stored, end - stored, target);
+			return entry < 0 ? -1 : entry + stored;
+		}
+		int segment = start >>> segmentBits;
+		if (end - 1 >>> segmentBits == segment)
+			// the row is in one segment, searched without the segment of each probe
+			return find(ancestors[segment], start & segmentMask, (end - 1 & segmentMask) + 1, target, start);
+
+		int low = start, high = end - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int ancestor = getAncestor(middle);
+			if (ancestor < target)
+				low = middle + 1;
+			else if (ancestor > target)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+	// Binary search of target in values[from..to[, the entry being numbered from first
+	private static int find(IntBuffer values, int from, int to, int target, int first) {
+		int low = from, high = to - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int ancestor = values.get(middle);
+			if (ancestor < target)
+				low = middle + 1;
+			else if (ancestor > target)
+				high = middle - 1;
+			else
+				return first + middle - from;
+		}
+		return -1;
+	}
+
+	// Ids of the classes on the shortest path from source to one of its ancestors, source first
+	public int[] getShortestPath(int source, int target) {
+		int length = 1;
+		for (int v = source; v != target; v = getHop(find(v, target)))
+			length++;
+
+		int[] path = new int[length];
+		path[0] = source;
+		for (int k = 1, v = source; v != target; k++)
+			path[k] = v = getHop(find(v, target));
+		return path;
+	}
+
+	/* Rows appended after the stored entries by update(), with the start and
+	 * end of every row. The arrays have room for later updates: the patch of
+	 * an update appends to them when the one it extends is the last to have
+	 * done so (size equals the shared tip), and copies them otherwise, so that
+	 * the entries a published patch reads never change.
+	 */
+	private static final class Patch {
+
+		final int[] ancestors;
+		final float[] distances;
+		final int[] hops;
+		// entries of the arrays used by this patch, and by the last patch appended to them
+		final int size;
+		final AtomicInteger tip;
+		final int[] starts, ends;
+		final int pairs;
+
+		private Patch(int[] ancestors, float[] distances, int[] hops, int size, AtomicInteger tip, int[] starts, int[] ends, int pairs) {
+			this.ancestors = ancestors;
+			this.distances = distances;
+			this.hops = hops;
+			this.size = size;
+			this.tip = tip;
+			this.starts = starts;
+			this.ends = ends;
+			this.pairs = pairs;
+		}
+
+		Patch(Patch entries, int[] starts, int[] ends, int pairs) {
+			this(entries.ancestors, entries.distances, entries.hops, entries.size, entries.tip, starts, ends, pairs);
+		}
+
+		// Arrays holding the entries of previous (none if null) with room up to size, rows not set yet
+		static Patch append(Patch previous, int size, int stored) {
+			int from = previous == null ? 0 : previous.size;
+			if (previous != null && size <= previous.ancestors.length && previous.tip.compareAndSet(from, size))
+				return new Patch(previous.ancestors, previous.distances, previous.hops, size, previous.tip, null, null, 0);
+
+			// twice the room needed, but no more than the appended entries that trigger a compaction
+			int capacity = (int) Math.max(size, Math.min(2L * size, Math.max(stored, COMPACT_MIN)));
+			int[] ancestors = new int[capacity], hops = new int[capacity];
+			float[] distances = new float[capacity];
+			if (previous != null) {
+				System.arraycopy(previous.ancestors, 0, ancestors, 0, from);
+				System.arraycopy(previous.distances, 0, distances, 0, from);
+				System.arraycopy(previous.hops, 0, hops, 0, from);
+			}
+			return new Patch(ancestors, distances, hops, size, new AtomicInteger(size), null, null, 0);
+		}
+	}
+}
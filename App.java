@@ -3,11 +3,18 @@ package msc;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
@@ -18,26 +25,64 @@ import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLLiteral;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.OWLOntologyStorageException;
 import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
 
-import msc.Vertex.DijkstraShortestPath;
-import msc.Vertex.Edge;
-
 public class App {
 
 
+	private static final Metrics.Histogram LOAD_TIME = Metrics.histogram("ontology.load");
+	private static final Metrics.Histogram BUILD_TIME = Metrics.histogram("graph.build");
+	private static final Metrics.Histogram LCS_TIME = Metrics.histogram("lcs");
+
+	// On-demand indexes of the ontologies given to the single-pair methods, dropped when their ontology changes.
+	// changes counts the changes seen, an index built while one happened is not kept
+	private static final Map<OWLOntology, OntologyIndex> onDemandIndexes = new WeakHashMap<>();
+	private static final Set<OWLOntologyManager> watchedManagers = Collections.newSetFromMap(new WeakHashMap<>());
+	private static long changes;
+
+
 	// Load ontology from computer file
-	private static OWLOntology loadOntologyFile(File file) throws OWLOntologyCreationException{		
-		return OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(file);
+	static OWLOntology loadOntologyFile(File file) throws OWLOntologyCreationException{		
+		SimilarityEvents.OntologyLoad event = new SimilarityEvents.OntologyLoad();
+		event.begin();
+		long start = System.nanoTime();
+		OWLOntology o = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(file);
+		return loaded(o, file.getPath(), event, start);
 	}
 
 
 	// Load ontology via its url
-	private static OWLOntology loadOntologyWeb(String url) throws OWLOntologyCreationException {
+	static OWLOntology loadOntologyWeb(String url) throws OWLOntologyCreationException {
 		// Example:	http://protege.stanford.edu/ontologies/pizza/pizza.owl
-		return OWLManager.createOWLOntologyManager().loadOntology(IRI.create(url));
+		SimilarityEvents.OntologyLoad event = new SimilarityEvents.OntologyLoad();
+		event.begin();
+		long start = System.nanoTime();
+		OWLOntology o = OWLManager.createOWLOntologyManager().loadOntology(IRI.create(url));
+		return loaded(o, url, event, start);
+	}
+
+
+	// Index of an ontology file, or of a snapshot file written by HierarchySnapshot which is read without parsing
+	static OntologyIndex loadIndex(File file, ForkJoinPool pool) throws OWLOntologyCreationException, IOException {
+		if (HierarchySnapshot.isSnapshot(file.toPath()))
+			return new OntologyIndex(HierarchySnapshot.read(file.toPath()), pool);
+		return new OntologyIndex(loadOntologyFile(file), pool);
+	}
+
+
+	private static OWLOntology loaded(OWLOntology o, String source, SimilarityEvents.OntologyLoad event, long start) {
+		LOAD_TIME.recordSince(start);
+		event.end();
+		if (event.shouldCommit()) {
+			event.source = source;
+			event.classes = o.getClassesInSignature().size();
+			event.commit();
+		}
+		return o;
 	}
 
 
@@ -47,7 +92,7 @@ public class App {
 	}
 
 
-	private static OWLLiteral getLabelClass(OWLOntology o, OWLClass cls) {
+	static OWLLiteral getLabelClass(OWLOntology o, OWLClass cls) {
 		OWLLiteral label = null;
 		IRI IRI = cls.getIRI();
 		
@@ -78,17 +123,14 @@ public class App {
 
 	
 	private static int getDifferentClassesNumber(OWLOntology o1, OWLOntology o2){
-		int nb = 0;
-		
-		for (OWLClass Ci : o1.getClassesInSignature()) {
-			if (Ci.isOWLClass() && !Ci.isOWLThing())
-				for(OWLClass Cj : o2.getClassesInSignature()) {
-					if (Cj.isOWLClass() && !Cj.isOWLThing())
-						if (getLabelClass(o1, Ci).equals(getLabelClass(o2, Cj)))
-							nb++;
-				}
-		}
-		return getClassesNumber(o1) + getClassesNumber(o2) - 2* nb;		
+		return getDifferentClassesNumber(new OntologyIndex(o1), new OntologyIndex(o2));
+	}
+
+
+	// Classes with the same label are matched through the alignment of the two label indexes
+	static int getDifferentClassesNumber(OntologyIndex o1, OntologyIndex o2){
+		long nb = o1.getAlignment(o2).getMatchedPairsNumber();
+		return (int) (o1.getClasses().size() + o2.getClasses().size() - 2* nb);		
 	}
 
 
@@ -109,97 +151,137 @@ public class App {
 		}		
 		return superclasses;	      
 	}
-	
-
 
-	private static Set<OWLClass> getRootClasses(OWLOntology o){
-		Set<OWLClass> root = new HashSet<>();
 
+	// Roots of the classes of o, whose necessity graph is given
+	static Set<OWLClass> getRootClasses(OWLOntology o, HierarchyGraph graph){
+		OWLClass[] classById = new OWLClass[graph.size()], rootVia = new OWLClass[graph.size()];
 		for (final OWLClass c : o.getClassesInSignature()) {
-			if (!c.isOWLThing() )
-				root.add(recRootClasses(o, c));	
+			if (c.isOWLThing())
+				continue;
+			int id = graph.getId(c.getIRI().getFragment());
+			if (classById[id] == null) {
+				classById[id] = c;
+				rootVia[id] = getRootVia(o, c);
+			}
 		}
-		return root;	      
+		return new HashSet<>(Arrays.asList(getRootOf(graph, classById, rootVia)));
 	}
 
 
-	private static OWLClass recRootClasses(OWLOntology o, OWLClass c){
-
-		for (final  OWLSubClassOfAxiom ax : o.getSubClassAxiomsForSubClass(c)) {
+	// Superclass the root of c is searched through: the last of its named superclasses, null if none
+	static OWLClass getRootVia(OWLOntology o, OWLClass c){
+		OWLClass via = null;
+		for (final OWLSubClassOfAxiom ax : o.getSubClassAxiomsForSubClass(c)) {
 			if (ax.getSuperClass().isOWLClass())
-				c = recRootClasses(o, ax.getSuperClass().asOWLClass());				
+				via = ax.getSuperClass().asOWLClass();
 		}
-		return c;	      
+		return via;
 	}
 
-	
-	// Get all common subsumers of c1 and c2
-	private static Set<OWLClass> getCS(OWLOntology o1, OWLOntology o2, OWLClass c1, OWLClass c2){
-		Set<OWLClass> cs = new HashSet<>();		
 
-		if(getRootClasses(o1).contains(c1)) {
-			cs.add(c1);
-			return cs;
-		}
-		
-		if(getRootClasses(o2).contains(c2)) {
-			cs.add(c2);
-			return cs;
-		} 
-		
-		for (OWLClass Ci : getSuperClasses(o1, c1)) {
-			if (!Ci.isOWLThing() && Ci.isOWLClass()) {
-				
-				// get classes labels - same classes have same labels/names in all ontologies			
-				OWLLiteral ciLabel = getLabelClass(o1, Ci);	
-				for(OWLClass Cj : getSuperClasses(o2, c2))
-					if (ciLabel.getLiteral().equalsIgnoreCase( getLabelClass(o2, Cj).getLiteral()))
-						cs.add(Cj);
+	/* Root of each class of graph by id: the class itself if rootVia is null, else the root of rootVia,
+	 * a class outside the graph (owl:Thing) being its own root. Classes are taken in topological order,
+	 * so the root of rootVia is known and each class costs one step. On a cyclic graph the chain of
+	 * rootVia is followed up to a known root, and a chain that comes back to one of its classes ends there.
+	 */
+	static OWLClass[] getRootOf(HierarchyGraph graph, OWLClass[] classById, OWLClass[] rootVia){
+		int n = graph.size();
+		OWLClass[] rootOf = new OWLClass[n];
+		int[] order = AncestorDistances.topologicalOrder(graph);
+		int[] chain = new int[n];
+		boolean[] inChain = new boolean[n];
+
+		for (int k = 0; k < n; k++) {
+			int v = order == null ? k : order[k], length = 0;
+			OWLClass root = null;
+			while (root == null) {
+				if (rootOf[v] != null)
+					root = rootOf[v];
+				else if (inChain[v])
+					root = classById[v];
+				else {
+					inChain[v] = true;
+					chain[length++] = v;
+					int via = rootVia[v] == null ? v : graph.getId(rootVia[v].getIRI().getFragment());
+					if (via == v)
+						root = classById[v];
+					else if (via < 0)
+						root = rootVia[v];
+					else
+						v = via;
+				}
+			}
+			while (length > 0) {
+				int w = chain[--length];
+				rootOf[w] = root;
+				inChain[w] = false;
 			}
 		}
-		return cs;	      
+		return rootOf;
 	}
 
 	
 	// Get the least common subsumers of c1 and c2
-	private static OWLClass getLCS(OWLOntology o1, OWLOntology o2, OWLClass c1, OWLClass c2){
+	static OWLClass getLCS(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2){
+		SimilarityEvents.LcsComputation event = new SimilarityEvents.LcsComputation();
+		event.begin();
+		long start = System.nanoTime();
+		OWLClass lcs = findLCS(o1, o2, c1, c2);
+		LCS_TIME.recordSince(start);
+		event.end();
+		if (event.shouldCommit()) {
+			event.class1 = o1.getName(c1);
+			event.class2 = o2.getName(c2);
+			event.lcs = lcs == null ? null : o1.getName(lcs);
+			event.commit();
+		}
+		return lcs;
+	}
+
+
+	private static OWLClass findLCS(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2){
 		
-		if(getRootClasses(o1).contains(c1))
+		if(o1.getRoots().contains(c1))
 			return c1;												
 		
-		if(getRootClasses(o2).contains(c2))					
+		if(o2.getRoots().contains(c2))					
 			return c2;
 		
-		Set<OWLClass> cs = getCS(o1,o2,c1,c2);
-	
-		HashMap<KeyShortestPaths, ShortestPaths> paths1 = getAllDistances(o1);
-		HashMap<KeyShortestPaths, ShortestPaths> paths2 = getAllDistances(o2);
-		
-		HashMap<String, Vertex> vertex1 = setEdges(o1);
-		HashMap<String, Vertex> vertex2 = setEdges(o2);
-		
-		Vertex source1 = vertex1.get(c1.getIRI().getFragment());
-		Vertex source2 = vertex2.get(c2.getIRI().getFragment());
-		
-		HashMap<Float, OWLClass> lcs = new HashMap<>();	
-		
-		// get all distances from both of c1 and c2 to c in order to compare distances
-		for (OWLClass c : cs) {
-			Vertex target = vertex1.get(c.getIRI().getFragment());
-
-			KeyShortestPaths key1 = new KeyShortestPaths(source1, target);
-			KeyShortestPaths key2 = new KeyShortestPaths(source2, target);
-			lcs.put(paths1.get(key1).getDistance() + paths2.get(key2).getDistance(), c);
+		int id1 = o1.getId(c1), id2 = o2.getId(c2);
+		ClassBitmap superclasses1 = o1.getSuperClasses(id1), superclasses2 = o2.getSuperClasses(id2);
+		OntologyAlignment alignment = o1 == o2 ? null : o1.getAlignment(o2);
+		
+		OWLClass lcs = null;
+		float min = Float.MAX_VALUE;
+		
+		// common subsumers are the superclasses of c2 with the label of a superclass of c1 - same classes have
+		// same labels/names in all ontologies. Keep the one with the min distance from both of c1 and c2 (the LCS),
+		// the last one in id order winning ties
+		for (int Cj : (alignment == null ? superclasses1.and(superclasses2) : superclasses2).toArray()) {
+			float dist1 = alignment == null ? o1.getDistance(id1, Cj) : getDistance(o1, id1, superclasses1, alignment.getFirsts(Cj));
+			if (Float.isNaN(dist1))
+				continue;
+			float dist = dist1 + o2.getDistance(id2, Cj);
+			if (dist <= min) {
+				min = dist;
+				lcs = o2.getClass(Cj);
+			}
 		}
+		return lcs;	      
+	}
 
-		// compare distances and get the class with the min distance (the LCS)
-		Set<Float> distance = lcs.keySet();
-		Float min = (float) -1.0;	
-		for(Float dist : distance)
-			if ( min < 0 || min > dist)
-				min = dist;
-		 
-		return  lcs.get(min);	      
+
+	// Min distance from a class to those of ids that are among its superclasses, NaN if none is
+	static float getDistance(OntologyIndex o, int id, ClassBitmap superclasses, int[] ids){
+		float min = Float.NaN;
+		for (int superclass : ids)
+			if (superclasses.contains(superclass)) {
+				float dist = o.getDistance(id, superclass);
+				if (Float.isNaN(min) || dist < min)
+					min = dist;
+			}
+		return min;
 	}
 
 
@@ -231,28 +313,49 @@ public class App {
 	}
 	
 
-	private static HashMap<String, Vertex> setVertexes(OWLOntology o){
+	private static String[] setVertexes(OWLOntology o){
 		String conceptname;
-		Vertex conceptvertex;
-		HashMap<String, Vertex> vertexes =  new HashMap<String, Vertex>();
+		LinkedHashSet<String> vertexes = new LinkedHashSet<String>();
 
 		for(OWLClass cls : o.getClassesInSignature()) {
 			if (!cls.isOWLThing()) {
 				conceptname = cls.getIRI().getFragment().toString();
-				conceptvertex = new Vertex(conceptname);
-				vertexes.put(conceptname, conceptvertex);
+				vertexes.add(conceptname);
 			}
 		}
-		return vertexes;
+		return vertexes.toArray(new String[vertexes.size()]);
 	}
 
 	
-	private static HashMap<String, Vertex> setEdges(OWLOntology o){
+	static HierarchyGraph setEdges(OWLOntology o){
+		SimilarityEvents.GraphBuild event = new SimilarityEvents.GraphBuild();
+		event.begin();
+		long start = System.nanoTime();
+		HierarchyGraph graph = buildGraph(o);
+		BUILD_TIME.recordSince(start);
+		event.end();
+		if (event.shouldCommit()) {
+			event.classes = graph.size();
+			event.edges = graph.getEdgesNumber();
+			event.commit();
+		}
+		return graph;
+	}
+
+
+	private static HierarchyGraph buildGraph(OWLOntology o){
 		String subclassname, superclassname;
 		float necdist;
 		
-		HashMap<String, Vertex> vertexes = setVertexes(o);
+		String[] vertexes = setVertexes(o);
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		for (int i = 0; i < vertexes.length; i++)
+			ids.put(vertexes[i], i);
+
 		HashMap<OWLSubClassOfAxiom, Float> nec =  getNecDegOfEachSubClassOfAxiom(o);
+		int[] sources = new int[nec.size()], targets = new int[nec.size()];
+		float[] weights = new float[nec.size()];
+		int edges = 0;
 		
 		for (OWLSubClassOfAxiom subclassof : nec.keySet())
 
@@ -260,135 +363,220 @@ public class App {
 				subclassname = subclassof.getSubClass().asOWLClass().getIRI().getFragment().toString();
 				superclassname = subclassof.getSuperClass().asOWLClass().getIRI().getFragment().toString();
 
+				// edges towards owl:Thing are not part of the graph
+				if (!ids.containsKey(subclassname) || !ids.containsKey(superclassname))
+					continue;
+
 				necdist = 1 / nec.get(subclassof);
-				vertexes.get(subclassname).addNeighbour(new Edge(necdist, vertexes.get(subclassname), vertexes.get(superclassname)));
+				sources[edges] = ids.get(subclassname);
+				targets[edges] = ids.get(superclassname);
+				weights[edges++] = necdist;
 			}
-		return vertexes;
+		return HierarchyGraph.fromEdges(vertexes, sources, targets, weights, edges);
 	}
 	
 	
 	public static void resetGraph(HashMap<String, Vertex> vertex) {
 		for (Vertex v : vertex.values()) {
 			v.setVisited(false);
+			v.setDistance(Float.MAX_VALUE);
+			v.setPredecessor(null);
 		}
 	}
 
 	
 	public static HashMap<KeyShortestPaths, ShortestPaths> getAllDistances(OWLOntology o){
+		return getAllDistances(o, null);
+	}
+
+
+	// Same as getAllDistances(o) with the source classes spread over the threads of pool
+	public static HashMap<KeyShortestPaths, ShortestPaths> getAllDistances(OWLOntology o, ForkJoinPool pool){
+		HierarchyGraph graph = setEdges(o);
+		return getAllDistances(graph, AncestorDistances.compute(graph, pool));
+	}
+
+
+	static HashMap<KeyShortestPaths, ShortestPaths> getAllDistances(HierarchyGraph graph, AncestorDistances ancestors){
 		HashMap<KeyShortestPaths, ShortestPaths> distances = new HashMap<KeyShortestPaths, ShortestPaths>();
-		HashMap<String, Vertex> vertex = setEdges(o);
 		
-		DijkstraShortestPath shortestPath = new DijkstraShortestPath();	
+		Vertex[] vertex = new Vertex[graph.size()];
+		for (int i = 0; i < vertex.length; i++)
+			vertex[i] = new Vertex(graph.getName(i));
 
-		for (OWLClass Ci : o.getClassesInSignature())
-			
-			if (!Ci.isOWLThing()) {
-				resetGraph(vertex);
-				Vertex source = vertex.get(Ci.getIRI().getFragment());
-				shortestPath.computeShortestPaths(source);
-
-				for (OWLClass Cj : getSuperClasses(o, Ci))					
-					if (Cj.isOWLClass()) {			 
-						Vertex target = vertex.get(Cj.getIRI().getFragment());
-						KeyShortestPaths key = new KeyShortestPaths(source, target);					
-						ShortestPaths paths = new ShortestPaths(shortestPath.getShortestPathTo(target), target.getDistance());
-						distances.put(key, paths);
-					}
+		for (int source = 0; source < graph.size(); source++)
+			for (int k = ancestors.getRowStart(source); k < ancestors.getRowEnd(source); k++) {
+				int target = ancestors.getAncestor(k);
+				KeyShortestPaths key = new KeyShortestPaths(vertex[source], vertex[target]);					
+				ShortestPaths paths = new ShortestPaths(vertex, ancestors, source, target, ancestors.getDistance(k));
+				distances.put(key, paths);
 			}
 		return distances;	
 	}
 
 
 	public static Float distance(OWLOntology o1, OWLOntology o2, OWLClass c1, OWLClass c2){
+		// a single pair only needs a few distances, searched on demand instead of computing them all
+		OntologyIndex index1 = getOnDemandIndex(o1);
+		return distance(index1, o1 == o2 ? index1 : getOnDemandIndex(o2), c1, c2);
+	}
+
+
+	/* On-demand index of o, shared by the calls on single pairs until o changes. The index is built
+	 * outside of the lock, so that a change listener never waits for a build.
+	 */
+	static OntologyIndex getOnDemandIndex(OWLOntology o){
+		long seen;
+		synchronized (onDemandIndexes) {
+			OntologyIndex index = onDemandIndexes.get(o);
+			if (index != null)
+				return index;
+			if (watchedManagers.add(o.getOWLOntologyManager()))
+				o.getOWLOntologyManager().addOntologyChangeListener(App::dropOnDemandIndexes);
+			seen = changes;
+		}
+		OntologyIndex index = OntologyIndex.onDemand(o);
+		synchronized (onDemandIndexes) {
+			if (changes == seen)
+				onDemandIndexes.put(o, index);
+		}
+		return index;
+	}
+
+
+	private static void dropOnDemandIndexes(List<? extends OWLOntologyChange> changed){
+		synchronized (onDemandIndexes) {
+			changes++;
+			for (OWLOntologyChange change : changed)
+				onDemandIndexes.remove(change.getOntology());
+		}
+	}
+
+
+	public static Float distance(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2){
 		
-		if (getLabelClass(o1, c1).getLiteral().equalsIgnoreCase( getLabelClass(o2, c2).getLiteral()))
+		if (o1.sameLabel(c1, o2, c2))
 			return (float) 1;
 		
 		OWLClass lcs = getLCS(o1, o2, c1, c2);
-		Set<OWLClass> roots1 = getRootClasses(o1);
-		Set<OWLClass> roots2 = getRootClasses(o2);
-		
-		HashMap<KeyShortestPaths, ShortestPaths> paths1 = getAllDistances(o1);
-		HashMap<KeyShortestPaths, ShortestPaths> paths2 = getAllDistances(o2);
-		
-		HashMap<String, Vertex> vertex1 = setEdges(o1);
-		HashMap<String, Vertex> vertex2 = setEdges(o2);
-		
-		Vertex sourceLCS1 = vertex1.get(lcs.getIRI().getFragment());
-		Vertex sourceLCS2 = vertex2.get(lcs.getIRI().getFragment());
+		if (lcs == null)
+			throw new UndefinedSimilarityException("No common subsumer of " + o1.getName(c1) + " and " + o2.getName(c2));
+		return distanceToRoots(o1, o2, lcs);
+	}
+
+
+	// Min necessity distance from the LCS of two classes to the roots of the ontologies
+	static float distanceToRoots(OntologyIndex o1, OntologyIndex o2, OWLClass lcs){
+		if (lcs == null)
+			throw new UndefinedSimilarityException("No common subsumer");
 		HashMap<OWLClass, Float> distances = new HashMap<>();
 
-		if(roots1.contains(lcs))
+		if(o1.getRoots().contains(lcs))
 			distances.put(lcs, (float) 1);
 		else
-			for(OWLClass root : roots1) {
-
+			for(OWLClass root : o1.getRoots())
 				// get all distances from lcs to roots in ontology1
-				Vertex targetRoot = vertex1.get(root.getIRI().getFragment());
-				KeyShortestPaths key = new KeyShortestPaths(sourceLCS1, targetRoot);	
-				distances.put(root, paths1.get(key).getDistance()); 
-			}
+				distances.put(root, o1.getDistance(lcs, root)); 
 
-		if(roots2.contains(lcs))
+		if(o2.getRoots().contains(lcs))
 			distances.put(lcs, (float) 1);
 		else 
-			for(OWLClass root : roots2) {
+			for(OWLClass root : o2.getRoots())
 				// get all distances from lcs to roots in ontology2
-				Vertex targetRoot = vertex2.get(root.getIRI().getFragment());
-				KeyShortestPaths key = new KeyShortestPaths(sourceLCS2, targetRoot);		
-				distances.put(root, paths2.get(key).getDistance());
-			}
+				distances.put(root, o2.getDistance(lcs, root));
 
 		// compare distances from lcs to each root then get the min distance
 		Collection<Float> dist = distances.values();
+		if (dist.isEmpty())
+			throw new UndefinedSimilarityException("No root");
 
 		return Collections.min(dist);	
 	}
 
 	
 	public static Float simNec(OWLOntology o1, OWLOntology o2, OWLClass c1, OWLClass c2){
-		OWLClass lcs = getLCS(o1, o2, c1, c2);
-		
-		HashMap<String, Vertex> vertex1 = setEdges(o1);
-		HashMap<String, Vertex> vertex2 = setEdges(o2);
-		
-		Vertex vertexC1 = vertex1.get(c1.getIRI().getFragment().toString()); 	
-		Vertex vertexC2 = vertex2.get(c2.getIRI().getFragment().toString());
-		Vertex vertexLCS = vertex1.get(lcs.getIRI().getFragment().toString());
+		// a single pair only needs a few distances, searched on demand instead of computing them all
+		OntologyIndex index1 = getOnDemandIndex(o1);
+		return simNec(index1, o1 == o2 ? index1 : getOnDemandIndex(o2), c1, c2);
+	}
+
+
+	public static Float simNec(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2){
 		
-		if (vertexC2.equals(vertexC1))
+		if (o1.getName(c1).equals(o2.getName(c2)))
 			return (float) 1;
 		
-		HashMap<KeyShortestPaths, ShortestPaths> paths1 = getAllDistances(o1);
-		HashMap<KeyShortestPaths, ShortestPaths> paths2 = getAllDistances(o2);
+		return simNec(o1, o2, c1, c2, getLCS(o1, o2, c1, c2));
+	}
+
+
+	// simNec of two classes with different names whose LCS is already known
+	static float simNec(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2, OWLClass lcs){
+		if (lcs == null)
+			throw new UndefinedSimilarityException("No common subsumer of " + o1.getName(c1) + " and " + o2.getName(c2));
+		return simNec(o1, o2, c1, c2, lcs, o1.sameLabel(c1, o2, c2) ? 1 : distanceToRoots(o1, o2, lcs));
+	}
+
+
+	// Same with the distance from the LCS to the roots given (1 for classes with the same label)
+	static float simNec(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2, OWLClass lcs, float distance){
+		if (lcs == null)
+			throw new UndefinedSimilarityException("No common subsumer of " + o1.getName(c1) + " and " + o2.getName(c2));
 		
 		// Compute distance between c1(c2) and its LCS
-		Float distC1Lcs = null, distC2Lcs = null;
-		if (vertexC1.equals(vertexLCS))
-			distC1Lcs = (float) 1;												
-		 else {
-			KeyShortestPaths key1 = new KeyShortestPaths(vertexC1, vertexLCS);
-			distC1Lcs = paths1.get(key1).getDistance();
-		}
+		float distC1Lcs, distC2Lcs;
+		if (o1.getName(c1).equals(o1.getName(lcs)))
+			distC1Lcs = 1;												
+		 else
+			distC1Lcs = o1.getDistance(c1, lcs);
 		
-		if (vertexC2.equals(vertexLCS))
-			distC2Lcs = (float) 1;
-		 else {
-			 KeyShortestPaths key2 = new KeyShortestPaths(vertexC2, vertexLCS);
-			 distC2Lcs = paths2.get(key2).getDistance();
-		}
+		if (o2.getName(c2).equals(o1.getName(lcs)))
+			distC2Lcs = 1;
+		 else
+			distC2Lcs = o2.getDistance(c2, lcs);
 		
-		Float distLcsRoot = 2 * distance(o1, o2, c1, c2);
+		float distLcsRoot = 2 * distance;
 		
 		return distLcsRoot / (distC1Lcs + distC2Lcs + distLcsRoot);		
 	}
 	
 	
+	// simNec of every class of classes1 with every class of classes2 (NaN for classes without common superclass),
+	// rows being computed on pool or sequentially if it is null
+	public static float[][] simNec(OntologyIndex o1, OntologyIndex o2, List<OWLClass> classes1, List<OWLClass> classes2, ForkJoinPool pool){
+		return PairwiseSimilarity.simNec(o1, o2, classes1, classes2, pool);
+	}
+
+
+	// simNec of each pair (first[i], second[i])
+	public static float[] simNec(OntologyIndex o1, OntologyIndex o2, OWLClass[] first, OWLClass[] second, ForkJoinPool pool){
+		return PairwiseSimilarity.simNec(o1, o2, first, second, pool);
+	}
+
+
+	public static List<ClassSimilarity> topK(OWLOntology o1, OWLOntology o2, OWLClass c1, int k){
+		// compile each ontology once, sharing the index when both are the same
+		OntologyIndex index1 = new OntologyIndex(o1);
+		return topK(index1, o1 == o2 ? index1 : new OntologyIndex(o2), c1, k);
+	}
+
+
+	// The k classes of o2 most similar to c1, candidates that cannot beat the k-th best being skipped
+	public static List<ClassSimilarity> topK(OntologyIndex o1, OntologyIndex o2, OWLClass c1, int k){
+		return SimilaritySearch.topK(o1, c1, o2, k);
+	}
+	
+	
 	public static Float weightNec(OWLOntology o, OWLClass cls){
+		return weightNec(new OntologyIndex(o), cls);
+	}
+
+
+	public static Float weightNec(OntologyIndex o, OWLClass cls){
 		Float simNec = (float) 0;
 		
-		for(OWLClass c : o.getClassesInSignature())
-			if (c.isOWLClass() && !c.isOWLThing() && !c.equals(cls))
+		for(OWLClass c : o.getClasses())
+			if (!c.equals(cls))
 				simNec += simNec(o, o, c, cls);
 		
 		return simNec / getClassesNumberDifOf(o, cls);
@@ -404,31 +592,58 @@ public class App {
 		
 		return nb;
 	}
+
+
+	public static Float getClassesNumberDifOf(OntologyIndex o, OWLClass cls){
+		return (float) (o.getClasses().contains(cls) ? o.getClasses().size() - 1 : o.getClasses().size());
+	}
 	
 	
 	
-	public static double simNecOnto(OWLOntology o1, OWLOntology o2){			
-		Float simNec1 = (float) 0;
-		Float w=(float)1, ww=(float) 1;
-		
-		for(OWLClass c1 : o1.getClassesInSignature())
+	public static double simNecOnto(OWLOntology o1, OWLOntology o2){
+		// compile each ontology once, sharing the index when both are the same
+		OntologyIndex index1 = new OntologyIndex(o1);
+		return simNecOnto(index1, o1 == o2 ? index1 : new OntologyIndex(o2));
+	}
 
-			if (c1.isOWLClass() && !c1.isOWLThing()) {
 
-				for(OWLClass c2 : o2.getClassesInSignature())
-					if(c2.isOWLClass() && !c2.isOWLThing()) {
-						simNec1 += weightNec(o1, c1) * weightNec(o2, c2) * simNec(o1, o2, c1, c2);
-						w += weightNec(o2, c2);
-					}
-				ww += w * weightNec(o1, c1);
-			}
+	public static double simNecOnto(OntologyIndex o1, OntologyIndex o2){
+		return simNecOnto(o1, o2, null);
+	}
+
 
-		return 1 - ( simNec1 / (ww * (getClassesNumber(o1) + getClassesNumber(o2)))); // necessary semantic similarity
+	// Estimate of simNecOnto(o1, o2) within +/- error with the given confidence (e.g. 0.95) from sampled class pairs,
+	// sampling no more pairs than the exact computation visits
+	public static SimilarityEstimate simNecOnto(OntologyIndex o1, OntologyIndex o2, double error, double confidence, ForkJoinPool pool){
+		long pairs = (long) o1.getClasses().size() * o2.getClasses().size();
+		return SampledSimilarity.simNecOnto(o1, o2, error, confidence, pairs, 0, pool);
+	}
+
+
+	// Class pairs are evaluated by tiles on pool, the result is the same whatever the number of threads
+	public static double simNecOnto(OntologyIndex o1, OntologyIndex o2, ForkJoinPool pool){
+		return TiledSimilarity.simNecOnto(o1, o2, pool);
 	}
 	
 	
 	
-	public static void main(String[] args) throws OWLOntologyCreationException {
+	public static void main(String[] args) throws OWLOntologyCreationException, IOException {
+
+		// "serve port [--load-dir dir] name=file..." keeps the ontologies in memory and answers queries over HTTP
+		if (args.length > 0 && args[0].equals("serve")) {
+			SimilarityServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		// "batch o1 o2 pairs output" streams the simNec of a list of pairs to CSV or JSON lines
+		if (args.length > 0 && args[0].equals("batch")) {
+			SimilarityBatch.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		// "snapshot ontology.owl output" saves the hierarchy of an ontology for the commands above to read without parsing
+		if (args.length > 0 && args[0].equals("snapshot")) {
+			HierarchySnapshot.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 
 		System.out.println("Chargement des ontologies");
 		long debut = System.currentTimeMillis();
@@ -486,7 +701,7 @@ public class App {
 		System.out.println("======================================");
 
 		
-		HashMap<String, Vertex> vertex = setEdges(o);
+		HierarchyGraph graph = setEdges(o);
 		
 		//display edges
 		
@@ -495,9 +710,9 @@ public class App {
 		System.out.println("======================================");
 	
 	
-		for (String key : vertex.keySet()) {
-			for (Edge edg  : vertex.get(key).getAdjacenciesList()) 
-				System.out.println(vertex.get(key)+"\n NEC " + edg.getWeight()+" "+edg.getStartVertex() +" "+edg.getTargetVertex());
+		for (int v = 0; v < graph.size(); v++) {
+			for (int e = graph.getEdgesStart(v); e < graph.getEdgesEnd(v); e++) 
+				System.out.println(graph.getName(v)+"\n NEC " + graph.getWeight(e)+" "+graph.getName(v) +" "+graph.getName(graph.getTarget(e)));
 		}
 		 
 
@@ -510,15 +725,16 @@ public class App {
 		System.out.println("======================================");
 		 
 		HashMap<KeyShortestPaths, ShortestPaths> paths = getAllDistances(o);
+		Set<OWLClass> roots = getRootClasses(o, graph);
 		
 		for (OWLClass Ci:o.getClassesInSignature()) { 
 			
 			if (!Ci.isOWLThing() && Ci.isOWLClass()) {			
-				Vertex source = vertex.get(Ci.getIRI().getFragment());
-				if (!getRootClasses(o).contains(Ci)){
+				Vertex source = new Vertex(Ci.getIRI().getFragment());
+				if (!roots.contains(Ci)){
 					
-					for(OWLClass Cj:getRootClasses(o)) {
-						Vertex target = vertex.get(Cj.getIRI().getFragment());
+					for(OWLClass Cj:roots) {
+						Vertex target = new Vertex(Cj.getIRI().getFragment());
 						KeyShortestPaths key = new KeyShortestPaths(source, target);
 
 						System.out.println("\n Shortest necessary path from "+key.getSource()+" to "+key.getTarget()+ " is "+paths.get(key).getPath() + " with distance "+paths.get(key).getDistance());
@@ -0,0 +1,199 @@
+package msc;
+
+import java.util.Arrays;
+
+/* Immutable compressed set of class ids in the style of Roaring bitmaps.
+ * Ids are split by their high 16 bits into chunks; a chunk holding at most
+ * 4096 ids is a sorted char[] of their low bits, a denser chunk is a
+ * 65536-bit long[] bitmap. Ancestor sets of a hierarchy are small, so most
+ * of them take 2 bytes per ancestor.
+ */
+public final class ClassBitmap {
+
+	private static final int ARRAY_MAX = 4096;
+	private static final int BITMAP_WORDS = 1024;
+
+	public static final ClassBitmap EMPTY = new ClassBitmap(new char[0], new Object[0], 0);
+
+	private final char[] keys;
+	private final Object[] containers;
+	private final int cardinality;
+
+	private ClassBitmap(char[] keys, Object[] containers, int cardinality) {
+		this.keys = keys;
+		this.containers = containers;
+		this.cardinality = cardinality;
+	}
+
+	// Bitmap of ids[from..to[, which must be sorted in increasing order without duplicates
+	public static ClassBitmap of(int[] ids, int from, int to) {
+		if (from == to)
+			return EMPTY;
+
+		int chunks = 0;
+		for (int i = from; i < to; i++)
+			if (i == from || ids[i] >>> 16 != ids[i - 1] >>> 16)
+				chunks++;
+
+		char[] keys = new char[chunks];
+		Object[] containers = new Object[chunks];
+		int chunk = 0;
+		for (int start = from; start < to; chunk++) {
+			int high = ids[start] >>> 16;
+			int end = start;
+			while (end < to && ids[end] >>> 16 == high)
+				end++;
+
+			keys[chunk] = (char) high;
+			if (end - start <= ARRAY_MAX) {
+				char[] lows = new char[end - start];
+				for (int i = start; i < end; i++)
+					lows[i - start] = (char) ids[i];
+				containers[chunk] = lows;
+			}
+			else {
+				long[] bits = new long[BITMAP_WORDS];
+				for (int i = start; i < end; i++)
+					bits[(ids[i] & 0xFFFF) >>> 6] |= 1L << ids[i];
+				containers[chunk] = bits;
+			}
+			start = end;
+		}
+		return new ClassBitmap(keys, containers, to - from);
+	}
+
+	public static ClassBitmap of(int[] sortedIds) {
+		return of(sortedIds, 0, sortedIds.length);
+	}
+
+	public int cardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	public boolean contains(int id) {
+		if (id < 0)
+			return false;
+		int chunk = Arrays.binarySearch(keys, (char) (id >>> 16));
+		if (chunk < 0)
+			return false;
+		Object container = containers[chunk];
+		if (container instanceof long[])
+			return (((long[]) container)[(id & 0xFFFF) >>> 6] & (1L << id)) != 0;
+		return Arrays.binarySearch((char[]) container, (char) id) >= 0;
+	}
+
+	public ClassBitmap and(ClassBitmap other) {
+		char[] resultKeys = new char[Math.min(keys.length, other.keys.length)];
+		Object[] resultContainers = new Object[resultKeys.length];
+		int chunks = 0, total = 0;
+
+		for (int i = 0, j = 0; i < keys.length && j < other.keys.length;) {
+			if (keys[i] < other.keys[j])
+				i++;
+			else if (keys[i] > other.keys[j])
+				j++;
+			else {
+				Object container = and(containers[i], other.containers[j]);
+				int count = count(container);
+				if (count > 0) {
+					resultKeys[chunks] = keys[i];
+					resultContainers[chunks++] = container;
+					total += count;
+				}
+				i++;
+				j++;
+			}
+		}
+		if (total == 0)
+			return EMPTY;
+		return new ClassBitmap(Arrays.copyOf(resultKeys, chunks), Arrays.copyOf(resultContainers, chunks), total);
+	}
+
+	private static Object and(Object a, Object b) {
+		if (a instanceof char[] && b instanceof char[]) {
+			char[] x = (char[]) a, y = (char[]) b;
+			char[] result = new char[Math.min(x.length, y.length)];
+			int count = 0;
+			for (int i = 0, j = 0; i < x.length && j < y.length;) {
+				if (x[i] < y[j])
+					i++;
+				else if (x[i] > y[j])
+					j++;
+				else {
+					result[count++] = x[i];
+					i++;
+					j++;
+				}
+			}
+			return Arrays.copyOf(result, count);
+		}
+		if (a instanceof long[] && b instanceof long[]) {
+			long[] x = (long[]) a, y = (long[]) b;
+			long[] bits = new long[BITMAP_WORDS];
+			int count = 0;
+			for (int w = 0; w < BITMAP_WORDS; w++) {
+				bits[w] = x[w] & y[w];
+				count += Long.bitCount(bits[w]);
+			}
+			if (count > ARRAY_MAX)
+				return bits;
+			char[] lows = new char[count];
+			for (int w = 0, k = 0; w < BITMAP_WORDS; w++)
+				for (long word = bits[w]; word != 0; word &= word - 1)
+					lows[k++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+			return lows;
+		}
+
+		// an array chunk and a bitmap chunk: keep the array entries set in the bitmap
+		char[] lows = (char[]) (a instanceof char[] ? a : b);
+		long[] bits = (long[]) (a instanceof long[] ? a : b);
+		char[] result = new char[lows.length];
+		int count = 0;
+		for (char low : lows)
+			if ((bits[low >>> 6] & (1L << low)) != 0)
+				result[count++] = low;
+		return Arrays.copyOf(result, count);
+	}
+
+	private static int count(Object container) {
+		if (container instanceof char[])
+			return ((char[]) container).length;
+		int count = 0;
+		for (long word : (long[]) container)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	public boolean intersects(ClassBitmap other) {
+		return !and(other).isEmpty();
+	}
+
+	// Ids of the set in increasing order
+	public int[] toArray() {
+		int[] ids = new int[cardinality];
+		int k = 0;
+		for (int chunk = 0; chunk < keys.length; chunk++) {
+			int high = keys[chunk] << 16;
+			Object container = containers[chunk];
+			if (container instanceof char[])
+				for (char low : (char[]) container)
+					ids[k++] = high | low;
+			else {
+				long[] bits = (long[]) container;
+				for (int w = 0; w < BITMAP_WORDS; w++)
+					for (long word = bits[w]; word != 0; word &= word - 1)
+						ids[k++] = high | (w * 64 + Long.numberOfTrailingZeros(word));
+			}
+		}
+		return ids;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
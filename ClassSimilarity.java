@@ -0,0 +1,27 @@
+package msc;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+// Class of an ontology with its necessary similarity to a searched class
+public class ClassSimilarity {
+	private final OWLClass cls;
+	private final float similarity;
+
+	public ClassSimilarity(OWLClass cls, float similarity) {
+		this.cls = cls;
+		this.similarity = similarity;
+	}
+
+	public OWLClass getCls() {
+		return cls;
+	}
+
+	public float getSimilarity() {
+		return similarity;
+	}
+
+	@Override
+	public String toString() {
+		return cls.getIRI().getFragment() + ", " + similarity;
+	}
+}
@@ -0,0 +1,106 @@
+package msc;
+
+import java.util.Arrays;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+/* Candidate common subsumers of one class c1 of o1 with the classes of o2:
+ * the classes of o2 with the label of a superclass of c1 (the superclasses
+ * of c1 themselves when o1 == o2), each with the distance from c1 to the
+ * closest superclass carrying its label. They only depend on c1, so a
+ * batch comparing c1 with many classes builds them once; the LCS of c1 and
+ * a class c2 is then the candidate among the superclasses of c2 closest to
+ * both classes, the same class App.getLCS finds.
+ */
+public final class CommonSubsumers {
+
+	private final OntologyIndex o2;
+	// candidates by increasing id in o2
+	private final int[] ids;
+	private final float[] distances;
+
+	public CommonSubsumers(OntologyIndex o1, OntologyIndex o2, int id1) {
+		this.o2 = o2;
+		int[] superclasses = o1.getSuperClasses(id1).toArray();
+
+		if (o1 == o2) {
+			this.ids = superclasses;
+			this.distances = new float[ids.length];
+			for (int k = 0; k < ids.length; k++)
+				distances[k] = o1.getDistance(id1, ids[k]);
+			return;
+		}
+
+		// (id in o2, distance) pairs packed in longs: distances are positive, so their bits sort as they compare
+		OntologyAlignment alignment = o1.getAlignment(o2);
+		int count = 0;
+		for (int superclass : superclasses)
+			count += alignment.getSeconds(superclass).length;
+		long[] candidates = new long[count];
+		count = 0;
+		for (int superclass : superclasses) {
+			long distance = Float.floatToIntBits(o1.getDistance(id1, superclass));
+			for (int id2 : alignment.getSeconds(superclass))
+				candidates[count++] = (long) id2 << 32 | distance;
+		}
+		Arrays.sort(candidates);
+
+		// the first pair of each class has its min distance
+		int distinct = 0;
+		for (int k = 0; k < count; k++)
+			if (k == 0 || candidates[k] >>> 32 != candidates[k - 1] >>> 32)
+				candidates[distinct++] = candidates[k];
+		this.ids = new int[distinct];
+		this.distances = new float[distinct];
+		for (int k = 0; k < distinct; k++) {
+			ids[k] = (int) (candidates[k] >>> 32);
+			distances[k] = Float.intBitsToFloat((int) candidates[k]);
+		}
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	// Id in o2 of the k-th candidate
+	public int getId(int k) {
+		return ids[k];
+	}
+
+	// Distance from c1 to the k-th candidate
+	public float getDistance(int k) {
+		return distances[k];
+	}
+
+	// LCS of c1 and the class id2 of o2 (not a root), null if they have no common subsumer.
+	// The candidates met in increasing id order, the last one wins ties as in App.getLCS.
+	public OWLClass getLCS(int id2) {
+		ClassBitmap superclasses2 = o2.getSuperClasses(id2);
+		int best = -1;
+		float min = Float.MAX_VALUE;
+
+		// go through the smaller of the two sets, looking the classes up in the other one
+		if (ids.length <= superclasses2.cardinality()) {
+			for (int k = 0; k < ids.length; k++)
+				if (superclasses2.contains(ids[k])) {
+					float dist = distances[k] + o2.getDistance(id2, ids[k]);
+					if (dist <= min) {
+						min = dist;
+						best = ids[k];
+					}
+				}
+		}
+		else
+			for (int superclass : superclasses2.toArray()) {
+				int k = Arrays.binarySearch(ids, superclass);
+				if (k >= 0) {
+					float dist = distances[k] + o2.getDistance(id2, superclass);
+					if (dist <= min) {
+						min = dist;
+						best = superclass;
+					}
+				}
+			}
+		return best == -1 ? null : o2.getClass(best);
+	}
+}
@@ -1,5 +1,5 @@
 package msc;
-import java.util.PriorityQueue;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -14,12 +14,16 @@ public class DijkstraAlgo{
 	public static void computePaths(Node source){
 		source.shortestDistance=0;
 
-		//implement a priority queue
-		PriorityQueue<Node> queue = new PriorityQueue<Node>();
-		queue.add(source);
+		//implement a priority queue, nodes get an id when they are first reached
+		HashMap<Node, Integer> ids = new HashMap<Node, Integer>();
+		List<Node> nodes = new ArrayList<Node>();
+		IndexedMinHeap queue = new IndexedMinHeap(16);
+		ids.put(source, 0);
+		nodes.add(source);
+		queue.insert(0, source.shortestDistance);
 
 		while(!queue.isEmpty()){
-			Node u = queue.poll();
+			Node u = nodes.get(queue.poll());
 
 			/*visit the adjacencies, starting from 
 			the nearest node(smallest shortestDistance)*/
@@ -33,12 +37,18 @@ public class DijkstraAlgo{
 				double distanceFromU = u.shortestDistance+weight;
 				if(distanceFromU<v.shortestDistance){
 
-					/*remove v from queue for updating 
-					the shortestDistance value*/
-					queue.remove(v);
+					/*decrease the key of v in the queue for 
+					updating the shortestDistance value*/
+					Integer id = ids.get(v);
+					if(id == null){
+						id = nodes.size();
+						ids.put(v, id);
+						nodes.add(v);
+						queue.ensureCapacity(id + 1);
+					}
 					v.shortestDistance = distanceFromU;
 					v.parent = u;
-					queue.add(v);
+					queue.insertOrDecrease(id, distanceFromU);
 
 				}
 			}
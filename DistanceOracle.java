@@ -0,0 +1,238 @@
+package msc;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Necessity distance between two given classes, computed on demand for
+ * ad-hoc queries that only need a few distances.
+ *
+ * A forward search goes up from the source while a backward search goes
+ * down from the target over the reversed graph, the side with the fewer
+ * queued classes being expanded first. The best meeting of the two sides
+ * is kept and the search stops once the closest queued classes of both
+ * sides cannot make a shorter path. Going up from a class usually settles
+ * a handful of ancestors, so a query touches a tiny part of the graph.
+ *
+ * Asking for the ancestors of a class runs its whole upward search, whose
+ * distances are kept with the bitmap of the ancestors: later distances from
+ * that class are looked up in its row instead of being searched again. Only
+ * the most recently used rows are kept (DEFAULT_ROWS unless told otherwise),
+ * so that comparing every class of an ontology does not end up holding all
+ * the ancestors of all the classes. Given HubLabels, the distances from the
+ * other classes are read from the labels instead of searched.
+ *
+ * Searches run on pooled states, one oracle serves several threads.
+ */
+public class DistanceOracle {
+
+	public static final int DEFAULT_ROWS = 4096;
+	private static final int SEGMENTS = 16;
+
+	private final HierarchyGraph graph;
+	private final HierarchyGraph reverse;
+	private final HierarchyGraph.DijkstraShortestPath forward;
+	private final HierarchyGraph.DijkstraShortestPath backward;
+	private final HubLabels labels;
+	private final Segment[] rows;
+
+	public DistanceOracle(HierarchyGraph graph) {
+		this(graph, graph.reverse());
+	}
+
+	// reverse is graph with the edges turned around, as given by graph.reverse()
+	public DistanceOracle(HierarchyGraph graph, HierarchyGraph reverse) {
+		this(graph, reverse, null);
+	}
+
+	// Oracle answering from the labels of graph when they are not null
+	public DistanceOracle(HierarchyGraph graph, HierarchyGraph reverse, HubLabels labels) {
+		this(graph, reverse, labels, DEFAULT_ROWS);
+	}
+
+	// Same oracle keeping the ancestors of at most maxRows classes
+	public DistanceOracle(HierarchyGraph graph, HierarchyGraph reverse, HubLabels labels, int maxRows) {
+		if (maxRows <= 0)
+			throw new IllegalArgumentException("Rows " + maxRows);
+		this.graph = graph;
+		this.reverse = reverse;
+		this.labels = labels;
+		this.forward = new HierarchyGraph.DijkstraShortestPath(graph);
+		this.backward = new HierarchyGraph.DijkstraShortestPath(reverse);
+		// a power of 2 segments, fewer than SEGMENTS for a tiny cache
+		this.rows = new Segment[Integer.highestOneBit(Math.min(SEGMENTS, maxRows))];
+		for (int s = 0; s < rows.length; s++)
+			rows[s] = new Segment(maxRows / rows.length);
+	}
+
+	public HierarchyGraph getGraph() {
+		return graph;
+	}
+
+	public HierarchyGraph getReverse() {
+		return reverse;
+	}
+
+	// Necessity distance from source to target, NaN if target is not an ancestor of source (as for source itself)
+	// or if either id is -1, a class missing from the graph
+	public float getDistance(int source, int target) {
+		if (source == target || source < 0 || target < 0)
+			return Float.NaN;
+		Row row = segment(source).get(source);
+		if (row != null) {
+			int k = Arrays.binarySearch(row.ancestors, target);
+			return k < 0 ? Float.NaN : row.distances[k];
+		}
+		if (labels != null)
+			return labels.getDistance(source, target);
+
+		try (HierarchyGraph.SearchState up = forward.startSearch(source);
+				HierarchyGraph.SearchState down = backward.startSearch(target)) {
+			float best = Float.MAX_VALUE;
+			int meeting = -1;
+
+			while (up.getQueuedNumber() > 0 && down.getQueuedNumber() > 0 && up.getQueuedMin() + down.getQueuedMin() < best) {
+				boolean upward = up.getQueuedNumber() <= down.getQueuedNumber();
+				HierarchyGraph.SearchState side = upward ? up : down, other = upward ? down : up;
+				HierarchyGraph sideGraph = upward ? graph : reverse;
+
+				// the classes just relaxed may join a path found by the other side
+				int v = side.settleNext();
+				for (int e = sideGraph.getEdgesStart(v); e < sideGraph.getEdgesEnd(v); e++) {
+					int w = sideGraph.getTarget(e);
+					if (other.isReached(w) && side.getDistance(w) + other.getDistance(w) < best) {
+						best = side.getDistance(w) + other.getDistance(w);
+						meeting = w;
+					}
+				}
+			}
+			return meeting == -1 ? Float.NaN : getPathDistance(getPath(up, down, meeting));
+		}
+	}
+
+	// Ids of the ancestors of a class in increasing order, the array is shared and must not be modified
+	public int[] getAncestors(int source) {
+		return getRow(source).ancestors;
+	}
+
+	// Same ancestors as a bitmap
+	public ClassBitmap getSuperClasses(int source) {
+		return getRow(source).superclasses;
+	}
+
+	private Row getRow(int source) {
+		Segment segment = segment(source);
+		Row row = segment.get(source);
+		if (row == null) {
+			// searched outside of the lock, threads searching the same class at once store equal rows
+			row = search(source);
+			segment.put(source, row);
+		}
+		return row;
+	}
+
+	private Segment segment(int source) {
+		return rows[(source * 0x9E3779B9 >>> 16) & (rows.length - 1)];
+	}
+
+	// Number of classes whose ancestors are kept
+	public int getRowsNumber() {
+		int size = 0;
+		for (Segment segment : rows)
+			size += segment.size();
+		return size;
+	}
+
+	private Row search(int source) {
+		try (HierarchyGraph.SearchState state = forward.computeShortestPaths(source)) {
+			int[] ancestors = new int[state.getReachedNumber() - 1];
+			for (int i = 1; i < state.getReachedNumber(); i++)
+				ancestors[i - 1] = state.getReached(i);
+			Arrays.sort(ancestors);
+
+			float[] distances = new float[ancestors.length];
+			for (int k = 0; k < ancestors.length; k++)
+				distances[k] = getPathDistance(state.getShortestPathTo(ancestors[k]));
+			return new Row(ancestors, distances);
+		}
+	}
+
+	// Classes from the source of up to the source of down through meeting
+	private static int[] getPath(HierarchyGraph.SearchState up, HierarchyGraph.SearchState down, int meeting) {
+		int[] first = up.getShortestPathTo(meeting);
+		int length = first.length;
+		for (int v = down.getPredecessor(meeting); v != -1; v = down.getPredecessor(v))
+			length++;
+
+		int[] path = Arrays.copyOf(first, length);
+		int i = first.length;
+		for (int v = down.getPredecessor(meeting); v != -1; v = down.getPredecessor(v))
+			path[i++] = v;
+		return path;
+	}
+
+	// Weights summed from the end of the path, in the order AncestorDistances adds them up,
+	// so that a distance is the same float whether it is computed here or read from the index
+	private float getPathDistance(int[] path) {
+		float distance = 0;
+		for (int i = path.length - 2; i >= 0; i--)
+			distance = getWeight(path[i], path[i + 1]) + distance;
+		return distance;
+	}
+
+	private float getWeight(int source, int target) {
+		float weight = Float.MAX_VALUE;
+		for (int e = graph.getEdgesStart(source); e < graph.getEdgesEnd(source); e++)
+			if (graph.getTarget(e) == target)
+				weight = Math.min(weight, graph.getWeight(e));
+		return weight;
+	}
+
+
+	private static class Row {
+
+		final int[] ancestors;
+		final float[] distances;
+		final ClassBitmap superclasses;
+
+		Row(int[] ancestors, float[] distances) {
+			this.ancestors = ancestors;
+			this.distances = distances;
+			this.superclasses = ClassBitmap.of(ancestors);
+		}
+	}
+
+
+	// Part of the rows in least recently used order, guarded by its own lock
+	private static final class Segment extends LinkedHashMap<Integer, Row> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		public synchronized Row get(Object key) {
+			return super.get(key);
+		}
+
+		@Override
+		public synchronized Row put(Integer key, Row value) {
+			return super.put(key, value);
+		}
+
+		@Override
+		public synchronized int size() {
+			return super.size();
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Row> eldest) {
+			return size() > capacity;
+		}
+	}
+}
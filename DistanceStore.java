@@ -0,0 +1,147 @@
+package msc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/* Binary file holding the AncestorDistances of a hierarchy so that they
+ * are computed once and memory-mapped by later runs.
+ *
+ * Layout (little endian):
+ *   int magic, int version, long fingerprint of the HierarchyGraph,
+ *   int classes number n, int pairs number m,
+ *   int[n+1] row offsets, int[m] ancestors, float[m] distances, int[m] hops
+ *
+ * A file whose fingerprint differs from the graph is ignored, so editing
+ * the ontology invalidates it. A mapping holds at most 2 GB, so the arrays
+ * are mapped in segments of AncestorDistances.SEGMENT_BITS values.
+ */
+public class DistanceStore {
+
+	private static final int MAGIC = 0x4D534344; // "MSCD"
+	private static final int VERSION = 1;
+	private static final int HEADER = 24;
+	private static final int CHUNK = 1 << 20;
+
+	// Distances of graph read from file, or computed on pool and written to file when it is missing or stale
+	public static AncestorDistances load(HierarchyGraph graph, Path file, ForkJoinPool pool) throws IOException {
+		long fingerprint = graph.fingerprint();
+		AncestorDistances distances = open(file, fingerprint);
+		if (distances == null) {
+			distances = AncestorDistances.compute(graph, pool);
+			write(distances, fingerprint, file);
+		}
+		return distances;
+	}
+
+	// Map the distances stored in file, null if there is no file or it was written for another hierarchy
+	public static AncestorDistances open(Path file, long fingerprint) throws IOException {
+		return open(file, fingerprint, AncestorDistances.SEGMENT_BITS);
+	}
+
+	// Same mapping segments of 1 << segmentBits values, smaller ones let tests cross segments
+	static AncestorDistances open(Path file, long fingerprint, int segmentBits) throws IOException {
+		if (!Files.isRegularFile(file))
+			return null;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER)
+				return null;
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) != -1);
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != fingerprint)
+				return null;
+
+			int n = header.getInt(), m = header.getInt();
+			long position = HEADER;
+			if (channel.size() != position + 4L * (n + 1) + 12L * m)
+				throw new IOException("Truncated distance store " + file);
+
+			// the mappings stay valid once the channel is closed
+			ByteBuffer[] offsets = map(channel, position, n + 1, segmentBits);
+			position += 4L * (n + 1);
+			ByteBuffer[] ancestors = map(channel, position, m, segmentBits);
+			position += 4L * m;
+			ByteBuffer[] distances = map(channel, position, m, segmentBits);
+			position += 4L * m;
+			ByteBuffer[] hops = map(channel, position, m, segmentBits);
+
+			FloatBuffer[] floats = new FloatBuffer[distances.length];
+			for (int s = 0; s < floats.length; s++)
+				floats[s] = distances[s].asFloatBuffer();
+			return new AncestorDistances(segmentBits, ints(offsets), ints(ancestors), floats, ints(hops));
+		}
+	}
+
+	// Mapping of count 4-byte values from position, in segments of 1 << segmentBits values
+	private static ByteBuffer[] map(FileChannel channel, long position, int count, int segmentBits) throws IOException {
+		ByteBuffer[] segments = new ByteBuffer[Math.max(1, (int) ((count + (1L << segmentBits) - 1) >>> segmentBits))];
+		for (int s = 0; s < segments.length; s++) {
+			long start = (long) s << segmentBits, length = Math.min(count - start, 1L << segmentBits);
+			segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, position + 4 * start, 4 * length).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return segments;
+	}
+
+	private static IntBuffer[] ints(ByteBuffer[] segments) {
+		IntBuffer[] ints = new IntBuffer[segments.length];
+		for (int s = 0; s < ints.length; s++)
+			ints[s] = segments[s].asIntBuffer();
+		return ints;
+	}
+
+	// Write the distances next to file then move them in place, a reader never sees a partial file
+	public static void write(AncestorDistances distances, long fingerprint, Path file) throws IOException {
+		distances = distances.compact();
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint);
+			buffer.putInt(distances.size()).putInt(distances.getPairsNumber());
+
+			int n = distances.size(), m = distances.getPairsNumber();
+			for (int v = 0; v <= n; v++)
+				buffer = put(channel, buffer).putInt(v < n ? distances.getRowStart(v) : m);
+			for (int entry = 0; entry < m; entry++)
+				buffer = put(channel, buffer).putInt(distances.getAncestor(entry));
+			for (int entry = 0; entry < m; entry++)
+				buffer = put(channel, buffer).putFloat(distances.getDistance(entry));
+			for (int entry = 0; entry < m; entry++)
+				buffer = put(channel, buffer).putInt(distances.getHop(entry));
+
+			flush(channel, buffer);
+			channel.force(true);
+		}
+		catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Buffer with room for one more value, written to the channel when full
+	private static ByteBuffer put(FileChannel channel, ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 4)
+			flush(channel, buffer);
+		return buffer;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -0,0 +1,296 @@
+package msc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/* Necessity graph of an ontology in compressed sparse row form.
+ * Classes are numbered 0..size()-1 and the edges leaving class i
+ * (subclass -> superclass) are stored in targets/weights between
+ * offsets[i] and offsets[i+1].
+ */
+public class HierarchyGraph {
+
+	private final String[] names;
+	private final HashMap<String, Integer> ids;
+	private final int[] offsets;
+	private final int[] targets;
+	private final float[] weights;
+
+	public HierarchyGraph(String[] names, int[] offsets, int[] targets, float[] weights) {
+		this.names = names;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.ids = new HashMap<>(names.length * 2);
+		for (int i = 0; i < names.length; i++)
+			ids.put(names[i], i);
+	}
+
+	// Build the graph from an unordered list of edges
+	public static HierarchyGraph fromEdges(String[] names, int[] sources, int[] targets, float[] weights, int edgesNumber) {
+		int[] offsets = new int[names.length + 1];
+		for (int e = 0; e < edgesNumber; e++)
+			offsets[sources[e] + 1]++;
+		for (int i = 0; i < names.length; i++)
+			offsets[i + 1] += offsets[i];
+
+		int[] next = Arrays.copyOf(offsets, names.length);
+		int[] csrTargets = new int[edgesNumber];
+		float[] csrWeights = new float[edgesNumber];
+		for (int e = 0; e < edgesNumber; e++) {
+			int slot = next[sources[e]]++;
+			csrTargets[slot] = targets[e];
+			csrWeights[slot] = weights[e];
+		}
+		return new HierarchyGraph(names, offsets, csrTargets, csrWeights);
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public int getEdgesNumber() {
+		return targets.length;
+	}
+
+	public String getName(int id) {
+		return names[id];
+	}
+
+	// Id of a class from its name, -1 if the class is not in the graph
+	public int getId(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	public int getEdgesStart(int id) {
+		return offsets[id];
+	}
+
+	public int getEdgesEnd(int id) {
+		return offsets[id + 1];
+	}
+
+	public int getTarget(int edge) {
+		return targets[edge];
+	}
+
+	public float getWeight(int edge) {
+		return weights[edge];
+	}
+
+	// Hash of the class names and weighted edges, it changes whenever the hierarchy does
+	public long fingerprint() {
+		long hash = 0xcbf29ce484222325L;
+		for (String name : names) {
+			for (int i = 0; i < name.length(); i++)
+				hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+			hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+		}
+		for (int offset : offsets)
+			hash = (hash ^ offset) * 0x100000001b3L;
+		for (int e = 0; e < targets.length; e++) {
+			hash = (hash ^ targets[e]) * 0x100000001b3L;
+			hash = (hash ^ Float.floatToIntBits(weights[e])) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	// Same classes with every edge turned around (superclass -> subclass)
+	public HierarchyGraph reverse() {
+		int[] sources = new int[targets.length];
+		for (int v = 0; v < names.length; v++)
+			for (int e = offsets[v]; e < offsets[v + 1]; e++)
+				sources[e] = v;
+		return fromEdges(names, targets, sources, weights, targets.length);
+	}
+
+
+	/* Dijkstra over a shared graph. The graph is never modified: every
+	 * search runs on its own SearchState taken from a pool, so one instance
+	 * can serve searches from several threads at once.
+	 */
+	public static class DijkstraShortestPath {
+
+		private static final Metrics.Histogram SEARCH_TIME = Metrics.histogram("dijkstra.search");
+		private static final Metrics.Counter SETTLED = Metrics.counter("dijkstra.settled");
+		private static final Metrics.Counter RELAXED = Metrics.counter("dijkstra.relaxed");
+
+		private final HierarchyGraph graph;
+		private final ConcurrentLinkedQueue<SearchState> pool = new ConcurrentLinkedQueue<>();
+
+		public DijkstraShortestPath(HierarchyGraph graph) {
+			this.graph = graph;
+		}
+
+		// The returned state must be closed to give it back to the pool
+		public SearchState computeShortestPaths(int source) {
+			SearchState state = startSearch(source);
+			while (state.settleNext() != -1)
+				;
+			return state;
+		}
+
+		// Search with only the source queued, carried on by SearchState.settleNext()
+		SearchState startSearch(int source) {
+			SearchState state = pool.poll();
+			if (state == null)
+				state = new SearchState(this);
+			state.reset();
+			state.source = source;
+			state.event = new SimilarityEvents.DijkstraSearch();
+			state.event.begin();
+			state.start = System.nanoTime();
+
+			state.touch(source);
+			state.distance[source] = 0;
+			state.priorityQueue.insert(source, 0);
+			return state;
+		}
+	}
+
+
+	/* Distances and predecessors of one search. Only the entries the search
+	 * reached are cleared before the state is reused. The search is recorded
+	 * in the metrics and as a JFR event when the state is closed.
+	 */
+	public static class SearchState implements AutoCloseable {
+
+		private final DijkstraShortestPath owner;
+		private final float[] distance;
+		private final int[] predecessor;
+		private final boolean[] visited;
+		private final int[] touched;
+		private final IndexedMinHeap priorityQueue;
+		private int touchedNumber;
+		private int source = -1;
+		private int settled, relaxed;
+		private long start;
+		private SimilarityEvents.DijkstraSearch event;
+
+		private SearchState(DijkstraShortestPath owner) {
+			int n = owner.graph.size();
+			this.owner = owner;
+			this.distance = new float[n];
+			this.predecessor = new int[n];
+			this.visited = new boolean[n];
+			this.touched = new int[n];
+			this.priorityQueue = new IndexedMinHeap(n);
+			Arrays.fill(distance, Float.MAX_VALUE);
+			Arrays.fill(predecessor, -1);
+		}
+
+		private void touch(int v) {
+			touched[touchedNumber++] = v;
+		}
+
+		private void reset() {
+			for (int i = 0; i < touchedNumber; i++) {
+				int v = touched[i];
+				distance[v] = Float.MAX_VALUE;
+				predecessor[v] = -1;
+				visited[v] = false;
+			}
+			touchedNumber = 0;
+			settled = 0;
+			relaxed = 0;
+			priorityQueue.clear();
+		}
+
+		// Settle the closest queued class and relax its edges, -1 when the search is over
+		int settleNext() {
+			if (priorityQueue.isEmpty())
+				return -1;
+			HierarchyGraph graph = owner.graph;
+
+			// Getting the minimum distance vertex from priority queue
+			int actual = priorityQueue.poll();
+			visited[actual] = true;
+			settled++;
+			relaxed += graph.getEdgesEnd(actual) - graph.getEdgesStart(actual);
+
+			for (int e = graph.getEdgesStart(actual); e < graph.getEdgesEnd(actual); e++) {
+				int v = graph.getTarget(e);
+				float newDistance = distance[actual] + graph.getWeight(e);
+				if (!visited[v] && newDistance < distance[v]) {
+					if (distance[v] == Float.MAX_VALUE)
+						touch(v);
+					distance[v] = newDistance;
+					predecessor[v] = actual;
+					priorityQueue.insertOrDecrease(v, newDistance);
+				}
+			}
+			return actual;
+		}
+
+		// Distance of the next class to be settled, Float.MAX_VALUE when the search is over
+		float getQueuedMin() {
+			return priorityQueue.isEmpty() ? Float.MAX_VALUE : distance[priorityQueue.peek()];
+		}
+
+		int getQueuedNumber() {
+			return priorityQueue.size();
+		}
+
+		// Whether the distance to target is final
+		boolean isSettled(int target) {
+			return visited[target];
+		}
+
+		int getPredecessor(int target) {
+			return predecessor[target];
+		}
+
+		public int getSource() {
+			return source;
+		}
+
+		// Number of classes reached by the search, the source included
+		public int getReachedNumber() {
+			return touchedNumber;
+		}
+
+		// Class reached in i-th position (0 is the source)
+		public int getReached(int i) {
+			return touched[i];
+		}
+
+		public float getDistance(int target) {
+			return distance[target];
+		}
+
+		public boolean isReached(int target) {
+			return distance[target] != Float.MAX_VALUE;
+		}
+
+		// Ids of the classes on the shortest path from the source to target, source first
+		public int[] getShortestPathTo(int target) {
+			int length = 0;
+			for (int v = target; v != -1; v = predecessor[v])
+				length++;
+
+			int[] path = new int[length];
+			for (int v = target; v != -1; v = predecessor[v])
+				path[--length] = v;
+			return path;
+		}
+
+		@Override
+		public void close() {
+			DijkstraShortestPath.SEARCH_TIME.recordSince(start);
+			DijkstraShortestPath.SETTLED.add(settled);
+			DijkstraShortestPath.RELAXED.add(relaxed);
+			event.end();
+			if (event.shouldCommit()) {
+				event.source = source;
+				event.graphClasses = owner.graph.size();
+				event.settled = settled;
+				event.relaxed = relaxed;
+				event.commit();
+			}
+			event = null;
+			owner.pool.offer(this);
+		}
+	}
+}
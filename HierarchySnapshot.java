@@ -0,0 +1,347 @@
+package msc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/* What the similarity measures read of an ontology: its classes, its
+ * roots, the label of each class and the necessity graph of its SubClassOf
+ * edges with their weights. It is extracted from a parsed ontology once
+ * and can be saved to a compact binary file, which later runs read in a
+ * few milliseconds instead of parsing the ontology again:
+ *
+ *   java -jar msc.jar snapshot body.owl body.msch
+ *
+ * Layout (little endian):
+ *   int magic, int version, int classes number c, int graph classes n,
+ *   int edges number m, int roots number r, int text bytes t,
+ *   int[n+1] edge offsets, int[m] edge targets, float[m] edge weights,
+ *   int[c+r+2n] lengths of the strings in UTF-8 bytes (-1 for null): IRIs of
+ *   the classes, IRIs of the roots, names of the graph classes, labels by id,
+ *   byte[t] the strings back to back
+ *
+ * Reading goes through the file with a buffer of CHUNK bytes, as a mapping
+ * holds at most 2 GB, and builds the OWLClass objects from their IRIs with
+ * the data factory, no ontology is parsed nor created.
+ */
+public class HierarchySnapshot {
+
+	private static final int MAGIC = 0x4D534348; // "MSCH"
+	private static final int VERSION = 1;
+	private static final int HEADER = 28;
+	private static final int CHUNK = 1 << 20;
+
+	private static final Metrics.Histogram READ_TIME = Metrics.histogram("snapshot.read");
+
+	private final List<OWLClass> classes;
+	private final Set<OWLClass> roots;
+	private final HierarchyGraph graph;
+	private final String[] labels;
+
+	public HierarchySnapshot(List<OWLClass> classes, Set<OWLClass> roots, HierarchyGraph graph, String[] labels) {
+		this.classes = Collections.unmodifiableList(classes);
+		this.roots = Collections.unmodifiableSet(roots);
+		this.graph = graph;
+		this.labels = labels;
+	}
+
+	// Hierarchy of a parsed ontology
+	public static HierarchySnapshot of(OWLOntology o) {
+		HierarchyGraph graph = App.setEdges(o);
+		List<OWLClass> classes = new ArrayList<>();
+
+		for (OWLClass cls : o.getClassesInSignature())
+			if (cls.isOWLClass() && !cls.isOWLThing())
+				classes.add(cls);
+
+		// labels are read once per class
+		String[] labels = new String[graph.size()];
+		for (OWLClass cls : classes) {
+			int id = graph.getId(cls.getIRI().getFragment());
+			if (labels[id] == null)
+				labels[id] = getLabel(o, cls);
+		}
+		return new HierarchySnapshot(classes, App.getRootClasses(o, graph), graph, labels);
+	}
+
+	// Label of a class in o, its name when it has no rdfs:label
+	static String getLabel(OWLOntology o, OWLClass cls) {
+		OWLLiteral label = App.getLabelClass(o, cls);
+		return label == null ? cls.getIRI().getFragment() : label.getLiteral();
+	}
+
+	// Classes other than owl:Thing, in signature order
+	public List<OWLClass> getClasses() {
+		return classes;
+	}
+
+	public Set<OWLClass> getRoots() {
+		return roots;
+	}
+
+	public HierarchyGraph getGraph() {
+		return graph;
+	}
+
+	// Label of each class of the graph by id, the array is shared and must not be modified
+	public String[] getLabels() {
+		return labels;
+	}
+
+	// Whether file starts like a snapshot, so that it can be told from an ontology document
+	public static boolean isSnapshot(Path file) throws IOException {
+		if (!Files.isRegularFile(file) || Files.size(file) < HEADER)
+			return false;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while (magic.hasRemaining() && channel.read(magic) != -1);
+			return magic.getInt(0) == MAGIC;
+		}
+	}
+
+	public static HierarchySnapshot read(Path file) throws IOException {
+		SimilarityEvents.OntologyLoad event = new SimilarityEvents.OntologyLoad();
+		event.begin();
+		long start = System.nanoTime();
+		HierarchySnapshot snapshot;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER)
+				throw new IOException("Not a hierarchy snapshot " + file);
+			Input input = new Input(channel);
+			ByteBuffer buffer = input.next(HEADER);
+			if (buffer.getInt() != MAGIC)
+				throw new IOException("Not a hierarchy snapshot " + file);
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("Hierarchy snapshot version " + version + " instead of " + VERSION + " in " + file);
+
+			// the counts are checked before anything is allocated from them
+			int c = buffer.getInt(), n = buffer.getInt(), m = buffer.getInt(), r = buffer.getInt(), t = buffer.getInt();
+			if (c < 0 || n < 0 || m < 0 || r < 0 || t < 0 || n == Integer.MAX_VALUE || c + r + 2L * n > Integer.MAX_VALUE)
+				throw new IOException("Corrupted hierarchy snapshot " + file);
+			if (channel.size() != HEADER + 4L * (n + 1) + 8L * m + 4L * (c + r + 2L * n) + t)
+				throw new IOException("Truncated hierarchy snapshot " + file);
+
+			int[] offsets = input.ints(n + 1), targets = input.ints(m);
+			if (offsets[0] != 0 || offsets[n] != m)
+				throw new IOException("Corrupted hierarchy snapshot " + file);
+			for (int id = 0; id < n; id++)
+				if (offsets[id] > offsets[id + 1])
+					throw new IOException("Corrupted hierarchy snapshot " + file);
+			for (int target : targets)
+				if (target < 0 || target >= n)
+					throw new IOException("Corrupted hierarchy snapshot " + file);
+			float[] weights = input.floats(m);
+			int[] lengths = input.ints(c + r + 2 * n);
+			byte[] text = input.bytes(t);
+
+			Strings strings = new Strings(text, lengths);
+			OWLDataFactory factory = OWLManager.getOWLDataFactory();
+			List<OWLClass> classes = new ArrayList<>(c);
+			for (int i = 0; i < c; i++)
+				classes.add(factory.getOWLClass(IRI.create(strings.next())));
+			Set<OWLClass> roots = new HashSet<>();
+			for (int i = 0; i < r; i++)
+				roots.add(factory.getOWLClass(IRI.create(strings.next())));
+			String[] names = new String[n], labels = new String[n];
+			for (int id = 0; id < n; id++)
+				names[id] = strings.next();
+			for (int id = 0; id < n; id++)
+				labels[id] = strings.next();
+
+			snapshot = new HierarchySnapshot(classes, roots, new HierarchyGraph(names, offsets, targets, weights), labels);
+		}
+
+		READ_TIME.recordSince(start);
+		event.end();
+		if (event.shouldCommit()) {
+			event.source = file.toString();
+			event.classes = snapshot.classes.size();
+			event.commit();
+		}
+		return snapshot;
+	}
+
+	// Write the snapshot next to file then move it in place, a reader never sees a partial file
+	public void write(Path file) throws IOException {
+		int n = graph.size(), m = graph.getEdgesNumber();
+		List<byte[]> strings = new ArrayList<>(classes.size() + roots.size() + 2 * n);
+		for (OWLClass cls : classes)
+			strings.add(utf8(cls.getIRI().toString()));
+		for (OWLClass root : roots)
+			strings.add(utf8(root.getIRI().toString()));
+		for (int id = 0; id < n; id++)
+			strings.add(utf8(graph.getName(id)));
+		for (int id = 0; id < n; id++)
+			strings.add(utf8(labels[id]));
+		long textLength = 0;
+		for (byte[] string : strings)
+			textLength += string == null ? 0 : string.length;
+		if (textLength > Integer.MAX_VALUE)
+			throw new IOException("Too many names and labels for a hierarchy snapshot");
+
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(classes.size()).putInt(n).putInt(m).putInt(roots.size()).putInt((int) textLength);
+
+			for (int id = 0; id <= n; id++)
+				put(channel, buffer).putInt(id < n ? graph.getEdgesStart(id) : m);
+			for (int e = 0; e < m; e++)
+				put(channel, buffer).putInt(graph.getTarget(e));
+			for (int e = 0; e < m; e++)
+				put(channel, buffer).putFloat(graph.getWeight(e));
+			for (byte[] string : strings)
+				put(channel, buffer).putInt(string == null ? -1 : string.length);
+			for (byte[] string : strings)
+				if (string != null)
+					for (int i = 0; i < string.length; i += CHUNK) {
+						int length = Math.min(CHUNK, string.length - i);
+						if (buffer.remaining() < length)
+							flush(channel, buffer);
+						buffer.put(string, i, length);
+					}
+
+			flush(channel, buffer);
+			channel.force(true);
+		}
+		catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Arguments: ontology file, snapshot file
+	public static void main(String[] args) throws IOException, OWLOntologyCreationException {
+		if (args.length != 2) {
+			System.err.println("Usage: snapshot ontology.owl output.msch");
+			return;
+		}
+		HierarchySnapshot snapshot = of(App.loadOntologyFile(new File(args[0])));
+		snapshot.write(Paths.get(args[1]));
+		System.err.println(snapshot.classes.size() + " classes, " + snapshot.graph.getEdgesNumber() + " edges written to " + args[1]);
+	}
+
+	private static byte[] utf8(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	// Buffer with room for one more value, written to the channel when full
+	private static ByteBuffer put(FileChannel channel, ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 4)
+			flush(channel, buffer);
+		return buffer;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+
+	// Values read one after the other from a channel through a buffer of CHUNK bytes
+	private static class Input {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+
+		Input(FileChannel channel) {
+			this.channel = channel;
+			buffer.limit(0);
+		}
+
+		// Buffer holding the next bytes of the channel, at most CHUNK
+		ByteBuffer next(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				buffer.compact();
+				while (buffer.hasRemaining() && channel.read(buffer) != -1);
+				buffer.flip();
+				if (buffer.remaining() < bytes)
+					throw new IOException("Truncated hierarchy snapshot");
+			}
+			return buffer;
+		}
+
+		int[] ints(int count) throws IOException {
+			int[] values = new int[count];
+			for (int i = 0, length; i < count; i += length) {
+				length = Math.min(count - i, CHUNK / 4);
+				next(4 * length).asIntBuffer().get(values, i, length);
+				buffer.position(buffer.position() + 4 * length);
+			}
+			return values;
+		}
+
+		float[] floats(int count) throws IOException {
+			float[] values = new float[count];
+			for (int i = 0, length; i < count; i += length) {
+				length = Math.min(count - i, CHUNK / 4);
+				next(4 * length).asFloatBuffer().get(values, i, length);
+				buffer.position(buffer.position() + 4 * length);
+			}
+			return values;
+		}
+
+		byte[] bytes(int count) throws IOException {
+			byte[] values = new byte[count];
+			for (int i = 0, length; i < count; i += length) {
+				length = Math.min(count - i, CHUNK);
+				next(length).get(values, i, length);
+			}
+			return values;
+		}
+	}
+
+
+	// Strings of the text decoded one after the other
+	private static class Strings {
+
+		private final byte[] text;
+		private final int[] lengths;
+		private int next, position;
+
+		Strings(byte[] text, int[] lengths) {
+			this.text = text;
+			this.lengths = lengths;
+		}
+
+		String next() throws IOException {
+			int length = lengths[next++];
+			if (length == -1)
+				return null;
+			if (length < 0 || position + length > text.length)
+				throw new IOException("Corrupted hierarchy snapshot");
+			String value = new String(text, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package msc;
+
+import java.util.Arrays;
+
+/* 2-hop labeling of the necessity graph (pruned landmark labeling).
+ *
+ * Every class v gets two labels: up(v), some classes above v (hubs) with
+ * the distance from v to each, and down(v), some hubs below v with the
+ * distance from each hub to v. They are built so that a shortest path from
+ * any class s to any ancestor t goes through a hub of both up(s) and
+ * down(t); the distance is then the smallest sum over the hubs the two
+ * labels share, found by merging them.
+ *
+ * Hubs are taken in order of importance (see rankHubs). From each hub a search goes down the reversed graph
+ * (filling up labels) and another one up the graph (filling down labels),
+ * both pruned at every class whose distance the labels of the previous
+ * hubs already give. A few central classes cover most paths, so the
+ * labels stay shorter than the rows of the table of AncestorDistances.
+ *
+ * Labels list hubs by rank, stored back to back in compressed rows like
+ * HierarchyGraph. Distances are sums of the weights in another order than
+ * AncestorDistances, they may differ from it in the last float bit when
+ * weights are not integers.
+ */
+public class HubLabels {
+
+	private final int[] upOffsets;
+	private final int[] upHubs;
+	private final float[] upDistances;
+	private final int[] downOffsets;
+	private final int[] downHubs;
+	private final float[] downDistances;
+
+	private HubLabels(Builder builder) {
+		int n = builder.up.length;
+		this.upOffsets = new int[n + 1];
+		this.downOffsets = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			upOffsets[v + 1] = upOffsets[v] + builder.upSizes[v];
+			downOffsets[v + 1] = downOffsets[v] + builder.downSizes[v];
+		}
+		this.upHubs = new int[upOffsets[n]];
+		this.upDistances = new float[upOffsets[n]];
+		this.downHubs = new int[downOffsets[n]];
+		this.downDistances = new float[downOffsets[n]];
+		for (int v = 0; v < n; v++) {
+			System.arraycopy(builder.up[v], 0, upHubs, upOffsets[v], builder.upSizes[v]);
+			System.arraycopy(builder.upValues[v], 0, upDistances, upOffsets[v], builder.upSizes[v]);
+			System.arraycopy(builder.down[v], 0, downHubs, downOffsets[v], builder.downSizes[v]);
+			System.arraycopy(builder.downValues[v], 0, downDistances, downOffsets[v], builder.downSizes[v]);
+		}
+	}
+
+	public static HubLabels compute(HierarchyGraph graph) {
+		return compute(graph, graph.reverse());
+	}
+
+	// reverse is graph with the edges turned around, as given by graph.reverse()
+	public static HubLabels compute(HierarchyGraph graph, HierarchyGraph reverse) {
+		Builder builder = new Builder(graph, reverse);
+		int[] hubs = rankHubs(graph, reverse);
+		for (int rank = 0; rank < hubs.length; rank++) {
+			builder.search(hubs[rank], rank, true);
+			builder.search(hubs[rank], rank, false);
+		}
+		return new HubLabels(builder);
+	}
+
+	/* Order of the hubs. Going up, a path crosses the levels (longest number of edges from a root) in
+	 * decreasing order, so levels are taken as in a binary search: level 0, then the levels that are
+	 * multiples of the highest powers of 2. Any path then meets a hub within a few levels of each
+	 * end, which keeps labels logarithmic in the depth on chains and trees. Within a level, classes
+	 * on more paths (paths coming up to them times paths going up from them) come first. When the
+	 * graph has a cycle there are no levels and classes are taken by decreasing degree.
+	 */
+	private static int[] rankHubs(HierarchyGraph graph, HierarchyGraph reverse) {
+		int n = graph.size();
+		int[] order = AncestorDistances.topologicalOrder(graph);
+		int[] separation = new int[n];
+		double[] importance = new double[n];
+
+		if (order == null)
+			for (int v = 0; v < n; v++)
+				importance[v] = graph.getEdgesEnd(v) - graph.getEdgesStart(v) + reverse.getEdgesEnd(v) - reverse.getEdgesStart(v);
+		else {
+			// superclasses come before their subclasses in the topological order
+			int[] level = new int[n];
+			double[] above = new double[n], below = new double[n];
+			for (int v : order) {
+				above[v] = 1;
+				for (int e = graph.getEdgesStart(v); e < graph.getEdgesEnd(v); e++) {
+					above[v] += above[graph.getTarget(e)];
+					level[v] = Math.max(level[v], level[graph.getTarget(e)] + 1);
+				}
+				separation[v] = Integer.numberOfTrailingZeros(level[v]);
+			}
+			for (int i = n - 1; i >= 0; i--) {
+				int v = order[i];
+				below[v] = 1;
+				for (int e = reverse.getEdgesStart(v); e < reverse.getEdgesEnd(v); e++)
+					below[v] += below[reverse.getTarget(e)];
+				importance[v] = above[v] * below[v];
+			}
+		}
+
+		Integer[] ranked = new Integer[n];
+		for (int v = 0; v < n; v++)
+			ranked[v] = v;
+		Arrays.sort(ranked, (x, y) -> {
+			if (separation[x] != separation[y])
+				return Integer.compare(separation[y], separation[x]);
+			if (importance[x] != importance[y])
+				return Double.compare(importance[y], importance[x]);
+			return Integer.compare(x, y);
+		});
+
+		int[] hubs = new int[n];
+		for (int rank = 0; rank < n; rank++)
+			hubs[rank] = ranked[rank];
+		return hubs;
+	}
+
+	public int size() {
+		return upOffsets.length - 1;
+	}
+
+	// Number of (class, hub) entries of all the labels
+	public long getEntriesNumber() {
+		return (long) upHubs.length + downHubs.length;
+	}
+
+	// Necessity distance from source to target, NaN if target is not an ancestor of source (as for source itself)
+	public float getDistance(int source, int target) {
+		if (source == target)
+			return Float.NaN;
+
+		float best = Float.MAX_VALUE;
+		int i = upOffsets[source], iEnd = upOffsets[source + 1];
+		int j = downOffsets[target], jEnd = downOffsets[target + 1];
+		while (i < iEnd && j < jEnd) {
+			if (upHubs[i] < downHubs[j])
+				i++;
+			else if (upHubs[i] > downHubs[j])
+				j++;
+			else
+				best = Math.min(best, upDistances[i++] + downDistances[j++]);
+		}
+		return best == Float.MAX_VALUE ? Float.NaN : best;
+	}
+
+
+	// Labels growing while the hubs are processed, with the scratch arrays of the pruned searches
+	private static class Builder {
+
+		private static final int[] NO_HUBS = new int[0];
+		private static final float[] NO_DISTANCES = new float[0];
+
+		private final HierarchyGraph graph;
+		private final HierarchyGraph reverse;
+		private final int[][] up, down;
+		private final float[][] upValues, downValues;
+		private final int[] upSizes, downSizes;
+
+		// distance from (or to) the current hub through each rank of its own label, MAX_VALUE if none
+		private final float[] hubDistances;
+		private final float[] distance;
+		private final boolean[] visited;
+		private final int[] touched;
+		private final IndexedMinHeap queue;
+
+		Builder(HierarchyGraph graph, HierarchyGraph reverse) {
+			int n = graph.size();
+			this.graph = graph;
+			this.reverse = reverse;
+			this.up = new int[n][];
+			this.down = new int[n][];
+			this.upValues = new float[n][];
+			this.downValues = new float[n][];
+			this.upSizes = new int[n];
+			this.downSizes = new int[n];
+			Arrays.fill(up, NO_HUBS);
+			Arrays.fill(down, NO_HUBS);
+			Arrays.fill(upValues, NO_DISTANCES);
+			Arrays.fill(downValues, NO_DISTANCES);
+
+			this.hubDistances = new float[n];
+			this.distance = new float[n];
+			this.visited = new boolean[n];
+			this.touched = new int[n];
+			this.queue = new IndexedMinHeap(n);
+			Arrays.fill(hubDistances, Float.MAX_VALUE);
+			Arrays.fill(distance, Float.MAX_VALUE);
+		}
+
+		/* Pruned Dijkstra from hub: going down the reversed graph the classes reached get the hub
+		 * in their up label, going up the graph in their down label. A class whose distance the
+		 * labels already give is neither labelled nor expanded.
+		 */
+		void search(int hub, int rank, boolean downwards) {
+			HierarchyGraph edges = downwards ? reverse : graph;
+			int[][] hubs = downwards ? up : down;
+			float[][] values = downwards ? upValues : downValues;
+			int[] sizes = downwards ? upSizes : downSizes;
+
+			// the label of the hub on the other side, looked up by rank while pruning
+			int[] own = downwards ? down[hub] : up[hub];
+			float[] ownValues = downwards ? downValues[hub] : upValues[hub];
+			int ownSize = downwards ? downSizes[hub] : upSizes[hub];
+			for (int k = 0; k < ownSize; k++)
+				hubDistances[own[k]] = ownValues[k];
+
+			int touchedNumber = 0;
+			touched[touchedNumber++] = hub;
+			distance[hub] = 0;
+			queue.insert(hub, 0);
+
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				visited[v] = true;
+				if (isCovered(hubs[v], values[v], sizes[v], distance[v]))
+					continue;
+				add(hubs, values, sizes, v, rank, distance[v]);
+
+				for (int e = edges.getEdgesStart(v); e < edges.getEdgesEnd(v); e++) {
+					int w = edges.getTarget(e);
+					float newDistance = distance[v] + edges.getWeight(e);
+					if (!visited[w] && newDistance < distance[w]) {
+						if (distance[w] == Float.MAX_VALUE)
+							touched[touchedNumber++] = w;
+						distance[w] = newDistance;
+						queue.insertOrDecrease(w, newDistance);
+					}
+				}
+			}
+
+			for (int i = 0; i < touchedNumber; i++) {
+				distance[touched[i]] = Float.MAX_VALUE;
+				visited[touched[i]] = false;
+			}
+			for (int k = 0; k < ownSize; k++)
+				hubDistances[own[k]] = Float.MAX_VALUE;
+		}
+
+		// Whether a path through the hubs of a label, joined to the current hub, is as short as d
+		private boolean isCovered(int[] hubs, float[] values, int size, float d) {
+			for (int k = 0; k < size; k++)
+				if (hubDistances[hubs[k]] != Float.MAX_VALUE && values[k] + hubDistances[hubs[k]] <= d)
+					return true;
+			return false;
+		}
+
+		private static void add(int[][] hubs, float[][] values, int[] sizes, int v, int rank, float d) {
+			int size = sizes[v];
+			if (size == hubs[v].length) {
+				int capacity = Math.max(4, size * 2);
+				hubs[v] = Arrays.copyOf(hubs[v], capacity);
+				values[v] = Arrays.copyOf(values[v], capacity);
+			}
+			hubs[v][size] = rank;
+			values[v][size] = d;
+			sizes[v] = size + 1;
+		}
+	}
+}
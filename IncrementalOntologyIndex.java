@@ -0,0 +1,314 @@
+package msc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationSubject;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+
+/* OntologyIndex kept up to date while its ontology is edited.
+ * Registered as a change listener, it reads again the SubClassOf axioms of
+ * the classes whose axioms changed (parents number and so necessity
+ * distances of their edges), then recomputes the ancestor rows, bitmaps,
+ * distances and roots of these classes and of their descendants only.
+ * The other rows are shared with the previous index (see
+ * AncestorDistances.update), so an update costs the rows it changes plus
+ * a pass over the classes and edges to rebuild the graph. New classes are
+ * appended after the existing ids. Every update publishes a new immutable
+ * OntologyIndex, readers keep the one they got. It is built like any index
+ * from a HierarchySnapshot, derived from the previous one: the labels of the
+ * new and relabelled classes are read by HierarchySnapshot.getLabel and the
+ * roots are those App.getRootClasses would find.
+ *
+ * The weight vector of the new index is computed again on first use, as
+ * weightNec depends on all the classes.
+ */
+public class IncrementalOntologyIndex implements OWLOntologyChangeListener {
+
+	private final OWLOntology ontology;
+	private volatile OntologyIndex index;
+
+	// Current edges by class id: named superclasses, all at the same necessity distance. The arrays by
+	// id have room for classes added later; classById is shared by the published indexes, which only
+	// read the ids they know, whose class never changes until a rebuild
+	private final ArrayList<String> names = new ArrayList<>();
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private int[][] parents;
+	private float[] weights;
+	private OWLClass[] classById;
+
+	// Superclass App.getRootClasses goes up through from each class (null if none) and the root it ends at
+	private OWLClass[] rootVia;
+	private OWLClass[] rootOf;
+	private final HashMap<OWLClass, Integer> rootCounts = new HashMap<>();
+
+	public IncrementalOntologyIndex(OWLOntology o) {
+		this.ontology = o;
+		rebuild();
+	}
+
+	// Index of o following its changes from now on
+	public static IncrementalOntologyIndex attach(OWLOntology o) {
+		IncrementalOntologyIndex index = new IncrementalOntologyIndex(o);
+		o.getOWLOntologyManager().addOntologyChangeListener(index);
+		return index;
+	}
+
+	public void detach() {
+		ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+	}
+
+	public OWLOntology getOntology() {
+		return ontology;
+	}
+
+	// Index of the ontology as of the last change
+	public OntologyIndex getIndex() {
+		return index;
+	}
+
+	private static String getName(OWLClass cls) {
+		return cls.getIRI().getFragment();
+	}
+
+	// Compile the whole ontology again, when ids cannot be kept
+	private synchronized void rebuild() {
+		OntologyIndex index = new OntologyIndex(ontology);
+		HierarchyGraph graph = index.getGraph();
+		int n = graph.size();
+
+		names.clear();
+		ids.clear();
+		for (int id = 0; id < n; id++) {
+			names.add(graph.getName(id));
+			ids.put(graph.getName(id), id);
+		}
+		parents = new int[n][];
+		weights = new float[n];
+		rootVia = new OWLClass[n];
+		for (int id = 0; id < n; id++)
+			readAxioms(id, index.getClass(id));
+
+		classById = new OWLClass[n];
+		for (int id = 0; id < n; id++)
+			classById[id] = index.getClass(id);
+		// the graph may have a cycle here, which the roots computed by App.getRootOf go round
+		rootOf = App.getRootOf(graph, classById, rootVia);
+		rootCounts.clear();
+		for (OWLClass root : rootOf)
+			rootCounts.merge(root, 1, Integer::sum);
+
+		this.index = index;
+	}
+
+	// Edges of a class and the superclass its root is searched through, as App.setEdges and App.getRootClasses see them
+	private void readAxioms(int id, OWLClass cls) {
+		Set<OWLSubClassOfAxiom> axioms = ontology.getSubClassAxiomsForSubClass(cls);
+		int[] up = new int[axioms.size()];
+		int count = 0;
+		rootVia[id] = null;
+
+		for (OWLSubClassOfAxiom ax : axioms)
+			if (ax.getSuperClass().isOWLClass()) {
+				OWLClass superclass = ax.getSuperClass().asOWLClass();
+				rootVia[id] = superclass;
+				Integer target = ids.get(getName(superclass));
+				// edges towards owl:Thing are not part of the graph
+				if (target != null)
+					up[count++] = target;
+			}
+		parents[id] = Arrays.copyOf(up, count);
+		weights[id] = 1 / ((float) 1 / axioms.size());
+	}
+
+	// Root of a class once the roots of its superclasses are known, true if it changed
+	private boolean setRoot(int id) {
+		OWLClass root;
+		if (rootVia[id] == null)
+			root = classById[id];
+		else {
+			Integer via = ids.get(getName(rootVia[id]));
+			root = via == null ? rootVia[id] : rootOf[via];
+		}
+		if (root.equals(rootOf[id]))
+			return false;
+
+		if (rootOf[id] != null && rootCounts.merge(rootOf[id], -1, Integer::sum) == 0)
+			rootCounts.remove(rootOf[id]);
+		rootCounts.merge(root, 1, Integer::sum);
+		rootOf[id] = root;
+		return true;
+	}
+
+	@Override
+	public synchronized void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+		Set<OWLClass> edited = new LinkedHashSet<>();
+		Set<OWLClass> mentioned = new LinkedHashSet<>();
+		Set<IRI> annotated = new HashSet<>();
+
+		for (OWLOntologyChange change : changes) {
+			if (change.getOntology() != ontology || !change.isAxiomChange())
+				continue;
+			OWLAxiom axiom = change.getAxiom();
+			mentioned.addAll(axiom.getClassesInSignature());
+			if (axiom instanceof OWLSubClassOfAxiom) {
+				OWLClassExpression subclass = ((OWLSubClassOfAxiom) axiom).getSubClass();
+				if (subclass.isOWLClass())
+					edited.add(subclass.asOWLClass());
+			}
+			else if (axiom instanceof OWLAnnotationAssertionAxiom) {
+				OWLAnnotationSubject subject = ((OWLAnnotationAssertionAxiom) axiom).getSubject();
+				if (subject instanceof IRI)
+					annotated.add((IRI) subject);
+			}
+		}
+
+		List<OWLClass> added = new ArrayList<>();
+		for (OWLClass cls : mentioned) {
+			if (cls.isOWLThing())
+				continue;
+			boolean known = ids.containsKey(getName(cls));
+			boolean present = ontology.containsClassInSignature(cls.getIRI());
+			if (known && !present) {
+				// a class left the ontology, the ids of the others change
+				rebuild();
+				return;
+			}
+			if (!known && present)
+				added.add(cls);
+		}
+		if (edited.isEmpty() && added.isEmpty() && annotated.isEmpty())
+			return;
+		update(edited, added, annotated);
+	}
+
+	private void update(Set<OWLClass> edited, List<OWLClass> added, Set<IRI> annotated) {
+		OntologyIndex previous = index;
+		int previousSize = names.size();
+		for (OWLClass cls : added) {
+			ids.put(getName(cls), names.size());
+			names.add(getName(cls));
+		}
+
+		int n = names.size();
+		if (n > parents.length) {
+			int capacity = Math.max(n, 2 * parents.length);
+			parents = Arrays.copyOf(parents, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+			rootVia = Arrays.copyOf(rootVia, capacity);
+			rootOf = Arrays.copyOf(rootOf, capacity);
+			classById = Arrays.copyOf(classById, capacity);
+		}
+		for (OWLClass cls : added)
+			classById[ids.get(getName(cls))] = cls;
+
+		// classes whose own edges changed
+		boolean[] affected = new boolean[n];
+		for (int id = previousSize; id < n; id++) {
+			readAxioms(id, classById[id]);
+			affected[id] = true;
+		}
+		for (OWLClass cls : edited) {
+			Integer id = ids.get(getName(cls));
+			if (id != null) {
+				readAxioms(id, cls);
+				affected[id] = true;
+			}
+		}
+
+		int edgesNumber = 0;
+		for (int id = 0; id < n; id++)
+			edgesNumber += parents[id].length;
+		int[] sources = new int[edgesNumber], targets = new int[edgesNumber];
+		float[] edgeWeights = new float[edgesNumber];
+		for (int id = 0, e = 0; id < n; id++)
+			for (int parent : parents[id]) {
+				sources[e] = id;
+				targets[e] = parent;
+				edgeWeights[e++] = weights[id];
+			}
+		HierarchyGraph graph = HierarchyGraph.fromEdges(names.toArray(new String[n]), sources, targets, edgeWeights, edgesNumber);
+
+		int[] order = AncestorDistances.topologicalOrder(graph);
+		if (order == null) {
+			rebuild();
+			return;
+		}
+
+		// the ancestors of a class change only if it or one of its ancestors was edited
+		HierarchyGraph children = graph.reverse();
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		for (int id = 0; id < n; id++)
+			if (affected[id])
+				queue[tail++] = id;
+		while (head < tail) {
+			int v = queue[head++];
+			for (int e = children.getEdgesStart(v); e < children.getEdgesEnd(v); e++)
+				if (!affected[children.getTarget(e)]) {
+					affected[children.getTarget(e)] = true;
+					queue[tail++] = children.getTarget(e);
+				}
+		}
+
+		AncestorDistances ancestors = AncestorDistances.update(graph, order, previous.getAncestorDistances(), affected);
+
+		ClassBitmap[] superclasses = new ClassBitmap[n];
+		for (int id = 0; id < n; id++) {
+			if (!affected[id]) {
+				superclasses[id] = previous.getSuperClasses(id);
+				continue;
+			}
+			int[] row = new int[ancestors.getRowEnd(id) - ancestors.getRowStart(id)];
+			for (int k = 0; k < row.length; k++)
+				row[k] = ancestors.getAncestor(ancestors.getRowStart(id) + k);
+			superclasses[id] = ClassBitmap.of(row);
+		}
+
+		boolean rootsChanged = false;
+		for (int id : order)
+			if (affected[id])
+				rootsChanged |= setRoot(id);
+		Set<OWLClass> roots = rootsChanged ? new HashSet<>(rootCounts.keySet()) : previous.getRoots();
+
+		HierarchySnapshot hierarchy = previous.getHierarchy();
+		String[] text = hierarchy.getLabels();
+		LabelIndex labels = previous.getLabels();
+		Set<Integer> relabelled = new HashSet<>();
+		for (IRI iri : annotated) {
+			Integer id = ids.get(iri.getFragment());
+			if (id != null && id < previousSize && classById[id].getIRI().equals(iri))
+				relabelled.add(id);
+		}
+		if (!added.isEmpty() || !relabelled.isEmpty()) {
+			text = Arrays.copyOf(text, n);
+			for (int id = previousSize; id < n; id++)
+				relabelled.add(id);
+			for (int id : relabelled)
+				text[id] = HierarchySnapshot.getLabel(ontology, classById[id]);
+			labels = null;
+		}
+
+		List<OWLClass> classes = hierarchy.getClasses();
+		if (!added.isEmpty()) {
+			classes = new ArrayList<>(classes);
+			classes.addAll(added);
+		}
+
+		hierarchy = new HierarchySnapshot(classes, roots, graph, text);
+		index = new OntologyIndex(hierarchy, classById, labels == null ? new LabelIndex(text) : labels, ancestors, superclasses);
+	}
+}
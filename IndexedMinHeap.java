@@ -0,0 +1,133 @@
+package msc;
+
+import java.util.Arrays;
+
+/* Min-priority queue over int ids 0..capacity-1 supporting decrease-key.
+ * It is a 4-ary heap: position[] keeps the slot of each queued id so that
+ * an id can be found and moved up in O(log n) instead of the linear scan
+ * done by PriorityQueue.remove(Object).
+ */
+public class IndexedMinHeap {
+
+	private static final int ARITY = 4;
+
+	private int[] heap;
+	private int[] position;
+	private double[] keys;
+	private int size;
+
+	public IndexedMinHeap(int capacity) {
+		this.heap = new int[capacity];
+		this.position = new int[capacity];
+		this.keys = new double[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int id) {
+		return id < position.length && position[id] != -1;
+	}
+
+	public double getKey(int id) {
+		return keys[id];
+	}
+
+	// Grow the range of accepted ids, used when ids are discovered during the search
+	public void ensureCapacity(int capacity) {
+		if (capacity <= position.length)
+			return;
+		int length = Math.max(capacity, position.length * 2);
+		int old = position.length;
+		heap = Arrays.copyOf(heap, length);
+		keys = Arrays.copyOf(keys, length);
+		position = Arrays.copyOf(position, length);
+		Arrays.fill(position, old, length, -1);
+	}
+
+	public void insert(int id, double key) {
+		keys[id] = key;
+		heap[size] = id;
+		position[id] = size;
+		siftUp(size++);
+	}
+
+	public void decreaseKey(int id, double key) {
+		keys[id] = key;
+		siftUp(position[id]);
+	}
+
+	// Insert the id, or lower its key if it is already queued with a larger one
+	public void insertOrDecrease(int id, double key) {
+		if (!contains(id))
+			insert(id, key);
+		else if (key < keys[id])
+			decreaseKey(id, key);
+	}
+
+	// Id with the smallest key, left in the queue
+	public int peek() {
+		return heap[0];
+	}
+
+	// Remove and return the id with the smallest key
+	public int poll() {
+		int min = heap[0];
+		position[min] = -1;
+		if (--size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			position[heap[i]] = -1;
+		size = 0;
+	}
+
+	private void siftUp(int slot) {
+		int id = heap[slot];
+		double key = keys[id];
+		while (slot > 0) {
+			int parent = (slot - 1) / ARITY;
+			if (keys[heap[parent]] <= key)
+				break;
+			heap[slot] = heap[parent];
+			position[heap[slot]] = slot;
+			slot = parent;
+		}
+		heap[slot] = id;
+		position[id] = slot;
+	}
+
+	private void siftDown(int slot) {
+		int id = heap[slot];
+		double key = keys[id];
+		while (true) {
+			int first = slot * ARITY + 1;
+			if (first >= size)
+				break;
+			int last = Math.min(first + ARITY, size);
+			int min = first;
+			for (int child = first + 1; child < last; child++)
+				if (keys[heap[child]] < keys[heap[min]])
+					min = child;
+			if (keys[heap[min]] >= key)
+				break;
+			heap[slot] = heap[min];
+			position[heap[slot]] = slot;
+			slot = min;
+		}
+		heap[slot] = id;
+		position[id] = slot;
+	}
+}
@@ -0,0 +1,66 @@
+package msc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/* Labels of the classes of an ontology by class id, with the reverse
+ * lookup from a normalized label (trimmed, lower case) to the ids of
+ * the classes carrying it.
+ */
+public class LabelIndex {
+
+	private static final int[] NONE = new int[0];
+
+	private final String[] labels;
+	private final String[] normalized;
+	private final HashMap<String, int[]> ids;
+
+	public LabelIndex(String[] labels) {
+		this.labels = labels;
+		this.normalized = new String[labels.length];
+		this.ids = new HashMap<>(labels.length * 2);
+
+		for (int id = 0; id < labels.length; id++) {
+			if (labels[id] == null)
+				continue;
+			normalized[id] = normalize(labels[id]);
+			int[] same = ids.get(normalized[id]);
+			if (same == null)
+				same = new int[] { id };
+			else {
+				same = Arrays.copyOf(same, same.length + 1);
+				same[same.length - 1] = id;
+			}
+			ids.put(normalized[id], same);
+		}
+	}
+
+	public static String normalize(String label) {
+		return label.trim().toLowerCase(Locale.ROOT);
+	}
+
+	public int size() {
+		return labels.length;
+	}
+
+	public String getLabel(int id) {
+		return labels[id];
+	}
+
+	public String getNormalizedLabel(int id) {
+		return normalized[id];
+	}
+
+	// First class carrying the label, -1 if there is none
+	public int getId(String label) {
+		int[] same = getIds(label);
+		return same.length == 0 ? -1 : same[0];
+	}
+
+	// Classes carrying the label in increasing id order
+	public int[] getIds(String label) {
+		int[] same = label == null ? null : ids.get(normalize(label));
+		return same == null ? NONE : same;
+	}
+}
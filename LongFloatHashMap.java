@@ -0,0 +1,144 @@
+package msc;
+
+import java.util.Arrays;
+
+/* Map from long keys to float values with open addressing (linear probing)
+ * in two primitive arrays, so lookups neither allocate nor box. It holds
+ * the necessity distances of (class, ancestor) pairs, their two ids being
+ * packed into one key by key(source, target).
+ */
+public class LongFloatHashMap {
+
+	// Marks a free slot, it cannot be used as a key (ids packed by key() are never negative)
+	private static final long FREE = Long.MIN_VALUE;
+	// Largest power of two an array can hold, so the map holds at most half as many entries
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private long[] keys;
+	private float[] values;
+	private int mask;
+	private int size;
+
+	public LongFloatHashMap() {
+		this(16);
+	}
+
+	public LongFloatHashMap(int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+
+	public LongFloatHashMap(LongFloatHashMap other) {
+		keys = other.keys.clone();
+		values = other.values.clone();
+		mask = other.mask;
+		size = other.size;
+	}
+
+	public static long key(int source, int target) {
+		return ((long) source << 32) | (target & 0xFFFFFFFFL);
+	}
+
+	private static int capacityFor(int size) {
+		// the table is kept at most half full
+		if (size > MAX_CAPACITY / 2)
+			throw new IllegalArgumentException("Too many entries for a LongFloatHashMap: " + size);
+		int capacity = 16;
+		while (capacity < 2L * size)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new float[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, FREE);
+	}
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void put(long key, float value) {
+		if (key == FREE)
+			throw new IllegalArgumentException("Reserved key " + key);
+		if (2 * (size + 1) > keys.length)
+			rehash(capacityFor(size + 1));
+
+		int i = slot(key);
+		while (keys[i] != FREE && keys[i] != key)
+			i = (i + 1) & mask;
+		if (keys[i] == FREE) {
+			keys[i] = key;
+			size++;
+		}
+		values[i] = value;
+	}
+
+	// Value of key, missing if the key is not in the map
+	public float get(long key, float missing) {
+		int i = slot(key);
+		while (keys[i] != FREE) {
+			if (keys[i] == key)
+				return values[i];
+			i = (i + 1) & mask;
+		}
+		return missing;
+	}
+
+	public boolean containsKey(long key) {
+		int i = slot(key);
+		while (keys[i] != FREE) {
+			if (keys[i] == key)
+				return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	public void remove(long key) {
+		if (key == FREE)
+			return;
+		int i = slot(key);
+		while (keys[i] != key) {
+			if (keys[i] == FREE)
+				return;
+			i = (i + 1) & mask;
+		}
+
+		// move back the following entries of the run that would no longer be found past the freed slot
+		for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		keys[i] = FREE;
+		size--;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		float[] oldValues = values;
+		allocate(capacity);
+		for (int j = 0; j < oldKeys.length; j++)
+			if (oldKeys[j] != FREE) {
+				int i = slot(oldKeys[j]);
+				while (keys[i] != FREE)
+					i = (i + 1) & mask;
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+	}
+}
@@ -0,0 +1,272 @@
+package msc;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/* In-process registry of the counters and latency histograms of the
+ * similarity pipeline, complementing the JFR events of SimilarityEvents:
+ * events tell what happened when in a recording, the registry gives the
+ * totals at any time without a recording running.
+ *
+ *   ontology.load, graph.build            time of App.loadOntology* and App.setEdges
+ *   snapshot.read                         time of HierarchySnapshot.read
+ *   dijkstra.search                       time of each search, until its state is closed
+ *   dijkstra.settled, dijkstra.relaxed    classes settled and edges relaxed by the searches (DistanceOracle,
+ *                                         AncestorDistances of a cyclic graph)
+ *   ancestors.rows, ancestors.relaxed     rows merged and entries relaxed by the AncestorDistances DP
+ *   lcs                                   time of App.getLCS
+ *   cache.hits, cache.misses              lookups of every SimilarityCache
+ *   simNecOnto, simNecOnto.tiles/pairs    time of TiledSimilarity.simNecOnto and its progress
+ *   simNecOnto.sampled                    pairs drawn by SampledSimilarity
+ *   batch.compute, batch.write            time of SimilarityBatch on each chunk of pairs
+ *
+ * Counters and histograms are named once and kept in static fields by the
+ * classes that update them, so an update is a few adds without any lookup.
+ * Recording can be turned off with -Dmsc.metrics=false or setEnabled.
+ */
+public final class Metrics {
+
+	private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+	private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+	private static volatile boolean enabled = !"false".equals(System.getProperty("msc.metrics"));
+
+	private Metrics() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+
+	// Counter of the given name, created at the first call
+	public static Counter counter(String name) {
+		return counters.computeIfAbsent(name, Counter::new);
+	}
+
+	// Histogram of durations in nanoseconds of the given name, created at the first call
+	public static Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, Histogram::new);
+	}
+
+	// Set every counter and histogram back to zero
+	public static void reset() {
+		for (Counter counter : counters.values())
+			counter.count.reset();
+		for (Histogram histogram : histograms.values())
+			histogram.reset();
+	}
+
+	// One line per counter and per histogram that recorded something, in name order
+	public static String report() {
+		StringBuilder report = new StringBuilder();
+		for (Counter counter : new TreeMap<>(counters).values())
+			if (counter.get() != 0)
+				report.append(counter).append('\n');
+		for (Histogram histogram : new TreeMap<>(histograms).values())
+			if (histogram.getCount() != 0)
+				report.append(histogram).append('\n');
+		return report.toString();
+	}
+
+	// Same content as report() as a JSON object, durations in microseconds
+	public static String toJson() {
+		StringBuilder json = new StringBuilder("{\"counters\": {");
+		int length = json.length();
+		for (Counter counter : new TreeMap<>(counters).values()) {
+			if (json.length() > length)
+				json.append(", ");
+			json.append('"').append(counter.name).append("\": ").append(counter.get());
+		}
+		json.append("}, \"histograms\": {");
+		length = json.length();
+		for (Histogram histogram : new TreeMap<>(histograms).values()) {
+			if (json.length() > length)
+				json.append(", ");
+			json.append('"').append(histogram.name).append("\": {\"count\": ").append(histogram.getCount())
+					.append(", \"mean\": ").append(micros(histogram.getMean()))
+					.append(", \"p50\": ").append(micros(histogram.getPercentile(0.5)))
+					.append(", \"p99\": ").append(micros(histogram.getPercentile(0.99)))
+					.append(", \"max\": ").append(micros(histogram.getMax())).append('}');
+		}
+		return json.append("}}").toString();
+	}
+
+	private static String micros(double nanos) {
+		return String.format("%.1f", nanos / 1e3);
+	}
+
+
+	public static final class Counter {
+
+		private final String name;
+		private final LongAdder count = new LongAdder();
+
+		private Counter(String name) {
+			this.name = name;
+		}
+
+		public void increment() {
+			if (enabled)
+				count.increment();
+		}
+
+		public void add(long n) {
+			if (enabled)
+				count.add(n);
+		}
+
+		public long get() {
+			return count.sum();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + get();
+		}
+	}
+
+
+	/* Durations in buckets of logarithmic width: a power of 2 is cut in
+	 * SUB_BUCKETS buckets, so that a percentile is known within 1/SUB_BUCKETS
+	 * of its value whatever its magnitude.
+	 *
+	 * Histograms are recorded in the innermost loops (lcs for every pair),
+	 * so the values are striped like a LongAdder: a thread records in the
+	 * stripe picked by its id, created at its first use, and the stripes are
+	 * only summed when read. There are at least twice as many stripes as processors,
+	 * so that threads running together seldom share one.
+	 */
+	public static final class Histogram {
+
+		private static final int SUB_BITS = 3, SUB_BUCKETS = 1 << SUB_BITS;
+		private static final int BUCKETS = 64 * SUB_BUCKETS;
+		// slots of a stripe after its buckets
+		private static final int COUNT = BUCKETS, SUM = BUCKETS + 1, MAX = BUCKETS + 2, SLOTS = BUCKETS + 3;
+
+		private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1);
+
+		private final String name;
+		private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+		private Histogram(String name) {
+			this.name = name;
+		}
+
+		private AtomicLongArray stripe() {
+			int index = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 40) & (STRIPES - 1);
+			AtomicLongArray stripe = stripes.get(index);
+			if (stripe == null && !stripes.compareAndSet(index, null, stripe = new AtomicLongArray(SLOTS)))
+				stripe = stripes.get(index);
+			return stripe;
+		}
+
+		// Record a duration in nanoseconds
+		public void record(long nanos) {
+			if (!enabled)
+				return;
+			nanos = Math.max(nanos, 0);
+			AtomicLongArray values = stripe();
+			values.getAndIncrement(bucket(nanos));
+			values.getAndIncrement(COUNT);
+			values.getAndAdd(SUM, nanos);
+			for (long max = values.get(MAX); nanos > max && !values.compareAndSet(MAX, max, nanos); max = values.get(MAX));
+		}
+
+		// Record the time elapsed since start, a value of System.nanoTime()
+		public void recordSince(long start) {
+			record(System.nanoTime() - start);
+		}
+
+		// Values below SUB_BUCKETS have a bucket each, above the top bits after the highest one pick the bucket
+		private static int bucket(long value) {
+			if (value < SUB_BUCKETS)
+				return (int) value;
+			int high = 63 - Long.numberOfLeadingZeros(value);
+			return (high - SUB_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (high - SUB_BITS)) & (SUB_BUCKETS - 1));
+		}
+
+		// Largest value of a bucket
+		private static long bucketMax(int bucket) {
+			if (bucket < SUB_BUCKETS)
+				return bucket;
+			int high = bucket / SUB_BUCKETS + SUB_BITS - 1;
+			long low = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (high - SUB_BITS);
+			return low + (1L << (high - SUB_BITS)) - 1;
+		}
+
+		private void reset() {
+			for (int s = 0; s < STRIPES; s++)
+				if (stripes.get(s) != null)
+					for (int i = 0; i < SLOTS; i++)
+						stripes.get(s).set(i, 0);
+		}
+
+		// Sum of a slot over the stripes
+		private long sum(int slot) {
+			long total = 0;
+			for (int s = 0; s < STRIPES; s++)
+				if (stripes.get(s) != null)
+					total += stripes.get(s).get(slot);
+			return total;
+		}
+
+		public long getCount() {
+			return sum(COUNT);
+		}
+
+		public long getTotal() {
+			return sum(SUM);
+		}
+
+		public double getMean() {
+			long n = getCount();
+			return n == 0 ? 0 : (double) getTotal() / n;
+		}
+
+		public long getMax() {
+			long max = 0;
+			for (int s = 0; s < STRIPES; s++)
+				if (stripes.get(s) != null)
+					max = Math.max(max, stripes.get(s).get(MAX));
+			return max;
+		}
+
+		// Upper bound of the bucket holding the given fraction (e.g. 0.99) of the values, 0 when empty
+		public long getPercentile(double fraction) {
+			long[] buckets = new long[BUCKETS];
+			long total = 0;
+			for (int b = 0; b < BUCKETS; b++)
+				total += buckets[b] = sum(b);
+			if (total == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(fraction * total)), seen = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				seen += buckets[b];
+				if (seen >= rank)
+					return Math.min(bucketMax(b), getMax());
+			}
+			return getMax();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s count %d total %.1f ms mean %.1f us p50 %.1f us p99 %.1f us max %.1f us", name, getCount(),
+					getTotal() / 1e6, getMean() / 1e3, getPercentile(0.5) / 1e3, getPercentile(0.99) / 1e3, getMax() / 1e3);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package msc;
+
+import java.util.Arrays;
+
+/* Correspondence between the classes of two ontologies having the same
+ * label, computed once as a hash join of their label indexes. Each class
+ * is mapped to the classes of the other ontology with its label, which
+ * may be several when a label is carried by more than one class.
+ */
+public class OntologyAlignment {
+
+	private static final int[] NONE = new int[0];
+
+	// arrays shared with the label indexes, in increasing id order
+	private final int[][] toFirst;
+	private final int[][] toSecond;
+	private final long matchedPairs;
+
+	public OntologyAlignment(LabelIndex first, LabelIndex second) {
+		this.toFirst = new int[second.size()][];
+		this.toSecond = new int[first.size()][];
+
+		long matched = 0;
+		for (int id = 0; id < second.size(); id++) {
+			toFirst[id] = first.getIds(second.getLabel(id));
+			matched += toFirst[id].length;
+		}
+		for (int id = 0; id < first.size(); id++)
+			toSecond[id] = second.getIds(first.getLabel(id));
+		this.matchedPairs = matched;
+	}
+
+	// First class of the first ontology with the label of a class of the second one, -1 if none
+	public int getFirst(int secondId) {
+		return toFirst[secondId].length == 0 ? -1 : toFirst[secondId][0];
+	}
+
+	// First class of the second ontology with the label of a class of the first one, -1 if none
+	public int getSecond(int firstId) {
+		return toSecond[firstId].length == 0 ? -1 : toSecond[firstId][0];
+	}
+
+	// Classes of the first ontology with the label of a class of the second one, the array is shared and must not be modified
+	public int[] getFirsts(int secondId) {
+		return secondId == -1 ? NONE : toFirst[secondId];
+	}
+
+	// Classes of the second ontology with the label of a class of the first one, the array is shared and must not be modified
+	public int[] getSeconds(int firstId) {
+		return firstId == -1 ? NONE : toSecond[firstId];
+	}
+
+	// Number of (class of the first, class of the second) pairs having the same label
+	public long getMatchedPairsNumber() {
+		return matchedPairs;
+	}
+
+	// Ids of the first ontology matching a set of ids of the second one
+	public ClassBitmap toFirst(ClassBitmap secondIds) {
+		int[] ids = secondIds.toArray();
+		int count = 0;
+		for (int id : ids)
+			count += toFirst[id].length;
+		int[] aligned = new int[count];
+		count = 0;
+		for (int id : ids)
+			for (int first : toFirst[id])
+				aligned[count++] = first;
+		Arrays.sort(aligned);
+
+		int distinct = 0;
+		for (int i = 0; i < count; i++)
+			if (i == 0 || aligned[i] != aligned[i - 1])
+				aligned[distinct++] = aligned[i];
+		return ClassBitmap.of(aligned, 0, distinct);
+	}
+}
@@ -0,0 +1,316 @@
+package msc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/* Compiled view of an ontology used by the similarity measures.
+ * Everything the measures read (classes, roots, superclasses, labels and
+ * necessity distances) is computed once here instead of on every call.
+ * An index made by onDemand() only searches the distances and superclasses
+ * of the classes actually queried, and keeps those of the most recently
+ * queried ones, which suits a few ad-hoc queries; one made by
+ * withHubLabels() reads the distances from a 2-hop labeling.
+ * Indexes are built from the HierarchySnapshot of an ontology, extracted
+ * from the parsed ontology or read back from a snapshot file.
+ */
+public class OntologyIndex {
+
+	private final HierarchySnapshot hierarchy;
+	private final List<OWLClass> classes;
+	private final HierarchyGraph graph;
+	private final Set<OWLClass> roots;
+	private final OWLClass[] classById;
+	private final ClassBitmap[] superclasses;
+	private final LabelIndex labels;
+	private final Map<OntologyIndex, OntologyAlignment> alignments = Collections.synchronizedMap(new WeakHashMap<OntologyIndex, OntologyAlignment>());
+	private final AncestorDistances ancestors;
+	private volatile LongFloatHashMap distances;
+	private final DistanceOracle oracle;
+	private volatile float[] weights;
+	private volatile HierarchyGraph subclassGraph;
+	private volatile Long fingerprint;
+
+	public OntologyIndex(OWLOntology o) {
+		this(o, null);
+	}
+
+	// Compile the index computing the necessity distances on pool, sequentially if it is null
+	public OntologyIndex(OWLOntology o, ForkJoinPool pool) {
+		this(HierarchySnapshot.of(o), pool);
+	}
+
+	// Compile the index reading the necessity distances from distanceStore, they are computed and
+	// stored there when the file is missing or was written for another version of the ontology
+	public OntologyIndex(OWLOntology o, ForkJoinPool pool, Path distanceStore) throws IOException {
+		this(HierarchySnapshot.of(o), pool, distanceStore);
+	}
+
+	// Same indexes from a hierarchy extracted before, e.g. read from a snapshot file without parsing the ontology
+	public OntologyIndex(HierarchySnapshot hierarchy, ForkJoinPool pool) {
+		this(hierarchy, AncestorDistances.compute(hierarchy.getGraph(), pool), null);
+	}
+
+	public OntologyIndex(HierarchySnapshot hierarchy, ForkJoinPool pool, Path distanceStore) throws IOException {
+		this(hierarchy, DistanceStore.load(hierarchy.getGraph(), distanceStore, pool), null);
+	}
+
+	// Index computing the necessity distances and superclasses of a class only when a measure asks for them,
+	// for a few ad-hoc queries. It has no table of distances: getAncestorDistances() and getDistances() are null.
+	public static OntologyIndex onDemand(OWLOntology o) {
+		return onDemand(HierarchySnapshot.of(o));
+	}
+
+	public static OntologyIndex onDemand(HierarchySnapshot hierarchy) {
+		return new OntologyIndex(hierarchy, null, new DistanceOracle(hierarchy.getGraph()));
+	}
+
+	// Index reading the necessity distances from a 2-hop labeling (HubLabels), computed up front but much
+	// smaller than the table of all the distances. Superclasses are searched on demand as with onDemand().
+	public static OntologyIndex withHubLabels(OWLOntology o) {
+		return withHubLabels(HierarchySnapshot.of(o));
+	}
+
+	public static OntologyIndex withHubLabels(HierarchySnapshot hierarchy) {
+		HierarchyGraph graph = hierarchy.getGraph(), reverse = graph.reverse();
+		return new OntologyIndex(hierarchy, null, new DistanceOracle(graph, reverse, HubLabels.compute(graph, reverse)));
+	}
+
+	// Either the ancestors or the oracle giving distances on demand are null
+	private OntologyIndex(HierarchySnapshot hierarchy, AncestorDistances ancestors, DistanceOracle oracle) {
+		this.hierarchy = hierarchy;
+		this.classes = hierarchy.getClasses();
+		this.graph = hierarchy.getGraph();
+		this.roots = hierarchy.getRoots();
+		this.ancestors = ancestors;
+		this.oracle = oracle;
+		// rows mapped from a DistanceStore are searched where they are rather than copied to the heap,
+		// rows already on the heap get a table, whose lookups beat the binary search of a row
+		if (ancestors == null)
+			this.subclassGraph = oracle.getReverse();
+		else if (!ancestors.isMapped())
+			this.distances = toTable(ancestors);
+
+		this.classById = new OWLClass[graph.size()];
+		for (OWLClass cls : classes) {
+			int id = getId(cls);
+			if (classById[id] == null)
+				classById[id] = cls;
+		}
+		this.labels = new LabelIndex(hierarchy.getLabels());
+
+		// the ancestor rows are sorted by id, each one becomes the bitmap of the superclasses of its class
+		if (ancestors == null)
+			this.superclasses = null;
+		else {
+			this.superclasses = new ClassBitmap[graph.size()];
+			for (int id = 0; id < graph.size(); id++)
+				superclasses[id] = ClassBitmap.of(getAncestorIds(id));
+		}
+	}
+
+	// Index of a hierarchy whose other parts are already computed, used to publish the updates of
+	// IncrementalOntologyIndex: labels indexes the labels of hierarchy, kept from the previous index when
+	// they did not change. Its distances are read from the rows, a table would be built again on every update
+	OntologyIndex(HierarchySnapshot hierarchy, OWLClass[] classById, LabelIndex labels, AncestorDistances ancestors,
+			ClassBitmap[] superclasses) {
+		this.hierarchy = hierarchy;
+		this.classes = hierarchy.getClasses();
+		this.graph = hierarchy.getGraph();
+		this.roots = hierarchy.getRoots();
+		this.classById = classById;
+		this.labels = labels;
+		this.ancestors = ancestors;
+		this.superclasses = superclasses;
+		this.oracle = null;
+	}
+
+	private static LongFloatHashMap toTable(AncestorDistances ancestors) {
+		LongFloatHashMap table = new LongFloatHashMap(ancestors.getPairsNumber());
+		for (int source = 0; source < ancestors.size(); source++)
+			for (int k = ancestors.getRowStart(source); k < ancestors.getRowEnd(source); k++)
+				table.put(LongFloatHashMap.key(source, ancestors.getAncestor(k)), ancestors.getDistance(k));
+		return table;
+	}
+
+	private int[] getAncestorIds(int id) {
+		int[] row = new int[ancestors.getRowEnd(id) - ancestors.getRowStart(id)];
+		for (int k = 0; k < row.length; k++)
+			row[k] = ancestors.getAncestor(ancestors.getRowStart(id) + k);
+		return row;
+	}
+
+	// Classes of the ontology other than owl:Thing, in signature order
+	public List<OWLClass> getClasses() {
+		return classes;
+	}
+
+	public Set<OWLClass> getRoots() {
+		return roots;
+	}
+
+	public Set<OWLClass> getSuperClasses(OWLClass cls) {
+		int id = getId(cls);
+		if (id == -1)
+			return Collections.emptySet();
+
+		Set<OWLClass> result = new HashSet<>();
+		for (int ancestor : getSuperClasses(id).toArray())
+			result.add(classById[ancestor]);
+		return result;
+	}
+
+	// Ids of the superclasses of a class, searched on demand by the oracle when there is one
+	public ClassBitmap getSuperClasses(int id) {
+		return oracle == null ? superclasses[id] : oracle.getSuperClasses(id);
+	}
+
+	public OWLClass getClass(int id) {
+		return classById[id];
+	}
+
+	public String getLabel(OWLClass cls) {
+		int id = getId(cls);
+		return id == -1 ? null : labels.getLabel(id);
+	}
+
+	public LabelIndex getLabels() {
+		return labels;
+	}
+
+	// Whether two classes of this index and of other have the same label (case is ignored)
+	public boolean sameLabel(OWLClass cls, OntologyIndex other, OWLClass otherCls) {
+		int id = getId(cls), otherId = other.getId(otherCls);
+		return id != -1 && otherId != -1 && labels.getNormalizedLabel(id).equals(other.labels.getNormalizedLabel(otherId));
+	}
+
+	// Classes of this index (first) and of other (second) with the same labels, computed once per pair
+	public OntologyAlignment getAlignment(OntologyIndex other) {
+		OntologyAlignment alignment = alignments.get(other);
+		if (alignment == null) {
+			alignment = new OntologyAlignment(labels, other.labels);
+			alignments.put(other, alignment);
+		}
+		return alignment;
+	}
+
+	// Classes are identified by their IRI fragment across ontologies
+	public String getName(OWLClass cls) {
+		return cls.getIRI().getFragment();
+	}
+
+	public HierarchyGraph getGraph() {
+		return graph;
+	}
+
+	// Classes, roots, graph and labels the index was built from
+	public HierarchySnapshot getHierarchy() {
+		return hierarchy;
+	}
+
+	// Graph with the edges turned around (superclass -> subclass), built on first use
+	public HierarchyGraph getSubClassGraph() {
+		HierarchyGraph result = subclassGraph;
+		if (result == null)
+			subclassGraph = result = graph.reverse();
+		return result;
+	}
+
+	// Hash of the hierarchy, labels and roots, computed on first use. It changes with any edit of what
+	// the measures read, so results computed on an index stay valid for all indexes with its fingerprint.
+	public long getFingerprint() {
+		Long result = fingerprint;
+		if (result == null) {
+			long hash = graph.fingerprint();
+			for (int id = 0; id < labels.size(); id++) {
+				String label = labels.getLabel(id);
+				hash = (hash ^ (label == null ? 0 : label.hashCode())) * 0x100000001b3L;
+			}
+			// the roots are a set, their hashes are added up whatever their order
+			long rootsHash = 0;
+			for (OWLClass root : roots)
+				rootsHash += getName(root).hashCode();
+			fingerprint = result = (hash ^ rootsHash) * 0x100000001b3L;
+		}
+		return result;
+	}
+
+	// Id of a class in the graph, -1 if the class is not part of it
+	public int getId(OWLClass cls) {
+		return graph.getId(getName(cls));
+	}
+
+	// Necessity distance from a class to one of its superclasses
+	public float getDistance(OWLClass source, OWLClass target) {
+		float distance = getDistance(getId(source), getId(target));
+		if (Float.isNaN(distance))
+			throw new UndefinedSimilarityException(getName(target) + " is not a superclass of " + getName(source));
+		return distance;
+	}
+
+	// Necessity distance between two class ids, NaN if target is not an ancestor of source
+	public float getDistance(int source, int target) {
+		if (oracle != null)
+			return oracle.getDistance(source, target);
+		LongFloatHashMap table = distances;
+		if (table != null)
+			return table.get(LongFloatHashMap.key(source, target), Float.NaN);
+		int entry = source < 0 || target < 0 ? -1 : ancestors.find(source, target);
+		return entry == -1 ? Float.NaN : ancestors.getDistance(entry);
+	}
+
+	public AncestorDistances getAncestorDistances() {
+		return ancestors;
+	}
+
+	// Distances of the (class, ancestor) pairs keyed by LongFloatHashMap.key(source, target), copied from the
+	// ancestor rows on first use when they are mapped or come from an update
+	public LongFloatHashMap getDistances() {
+		LongFloatHashMap result = distances;
+		if (result == null && ancestors != null)
+			synchronized (this) {
+				result = distances;
+				if (result == null)
+					distances = result = toTable(ancestors);
+			}
+		return result;
+	}
+
+	public float[] getWeights() {
+		return getWeights(null);
+	}
+
+	// weightNec of every class in getClasses() order, computed on first use (on pool if not null) and
+	// kept for later comparisons. The array is shared and must not be modified.
+	public float[] getWeights(ForkJoinPool pool) {
+		float[] result = weights;
+		if (result == null)
+			synchronized (this) {
+				result = weights;
+				if (result == null)
+					weights = result = computeWeights(pool);
+			}
+		return result;
+	}
+
+	private float[] computeWeights(ForkJoinPool pool) {
+		float[] result = new float[classes.size()];
+		if (pool == null)
+			for (int i = 0; i < result.length; i++)
+				result[i] = App.weightNec(this, classes.get(i));
+		else
+			pool.submit(() -> IntStream.range(0, result.length).parallel()
+					.forEach(i -> result[i] = App.weightNec(this, classes.get(i)))).join();
+		return result;
+	}
+}
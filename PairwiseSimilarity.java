@@ -0,0 +1,116 @@
+package msc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+/* simNec of many class pairs at once. Pairs are evaluated grouped by their
+ * first class, whose common subsumer candidates (CommonSubsumers) are
+ * computed once for the whole group, and the distance from an LCS to the
+ * roots, which only depends on the LCS, is computed once per batch for
+ * each LCS met. Pairs for which simNec is not defined (no common superclass,
+ * or an LCS below none of the roots) get NaN without stopping the others.
+ */
+public class PairwiseSimilarity {
+
+	private final OntologyIndex o1, o2;
+	// distance to the roots by id of the LCS in o2, NaN until computed
+	private final float[] rootDistances;
+
+	private PairwiseSimilarity(OntologyIndex o1, OntologyIndex o2) {
+		this.o1 = o1;
+		this.o2 = o2;
+		this.rootDistances = new float[o2.getGraph().size()];
+		Arrays.fill(rootDistances, Float.NaN);
+	}
+
+	// Matrix of simNec(classes1[i], classes2[j]), rows being computed on pool (sequentially if null)
+	public static float[][] simNec(OntologyIndex o1, OntologyIndex o2, List<OWLClass> classes1, List<OWLClass> classes2, ForkJoinPool pool) {
+		PairwiseSimilarity batch = new PairwiseSimilarity(o1, o2);
+		float[][] matrix = new float[classes1.size()][classes2.size()];
+		run(pool, classes1.size(), i -> {
+			OWLClass c1 = classes1.get(i);
+			CommonSubsumers subsumers = batch.getSubsumers(c1);
+			for (int j = 0; j < classes2.size(); j++)
+				matrix[i][j] = batch.simNec(c1, subsumers, classes2.get(j));
+		});
+		return matrix;
+	}
+
+	// simNec(first[p], second[p]) of each pair p, pairs with the same first class being computed together
+	public static float[] simNec(OntologyIndex o1, OntologyIndex o2, OWLClass[] first, OWLClass[] second, ForkJoinPool pool) {
+		if (first.length != second.length)
+			throw new IllegalArgumentException("Pairs of " + first.length + " and " + second.length + " classes");
+
+		PairwiseSimilarity batch = new PairwiseSimilarity(o1, o2);
+		int n = first.length;
+
+		// pair indexes sorted by id of their first class, cut in groups of the same class
+		long[] keys = new long[n];
+		for (int p = 0; p < n; p++)
+			keys[p] = ((long) o1.getId(first[p]) << 32) | p;
+		Arrays.sort(keys);
+		int[] groups = new int[n + 1];
+		int groupsNumber = 0;
+		for (int p = 0; p < n; p++)
+			if (p == 0 || keys[p] >>> 32 != keys[p - 1] >>> 32)
+				groups[groupsNumber++] = p;
+		groups[groupsNumber] = n;
+
+		float[] result = new float[n];
+		run(pool, groupsNumber, g -> {
+			CommonSubsumers subsumers = batch.getSubsumers(first[(int) keys[groups[g]]]);
+			for (int q = groups[g]; q < groups[g + 1]; q++) {
+				int p = (int) keys[q];
+				result[p] = batch.simNec(first[p], subsumers, second[p]);
+			}
+		});
+		return result;
+	}
+
+	private static void run(ForkJoinPool pool, int tasks, IntConsumer task) {
+		if (pool == null)
+			for (int i = 0; i < tasks; i++)
+				task.accept(i);
+		else
+			pool.submit(() -> IntStream.range(0, tasks).parallel().forEach(task)).join();
+	}
+
+	// Candidate LCS of c1 with any class, null for a root or a class outside of o1 whose LCS is given by App.getLCS
+	private CommonSubsumers getSubsumers(OWLClass c1) {
+		int id = o1.getId(c1);
+		return id == -1 || o1.getRoots().contains(c1) ? null : new CommonSubsumers(o1, o2, id);
+	}
+
+	private float simNec(OWLClass c1, CommonSubsumers subsumers, OWLClass c2) {
+		if (o1.getName(c1).equals(o2.getName(c2)))
+			return 1;
+
+		int id2 = o2.getId(c2);
+		OWLClass lcs = subsumers == null || id2 == -1 || o2.getRoots().contains(c2) ? App.getLCS(o1, o2, c1, c2) : subsumers.getLCS(id2);
+		if (lcs == null)
+			return Float.NaN;
+		try {
+			return App.simNec(o1, o2, c1, c2, lcs, o1.sameLabel(c1, o2, c2) ? 1 : getRootDistance(lcs));
+		}
+		catch (UndefinedSimilarityException e) {
+			return Float.NaN;
+		}
+	}
+
+	private float getRootDistance(OWLClass lcs) {
+		int id = o2.getId(lcs);
+		// the LCS of a root is the root itself, which may be a class of o1
+		if (id == -1 || !lcs.equals(o2.getClass(id)))
+			return App.distanceToRoots(o1, o2, lcs);
+		// threads computing the same entry at once store the same value
+		float distance = rootDistances[id];
+		if (Float.isNaN(distance))
+			rootDistances[id] = distance = App.distanceToRoots(o1, o2, lcs);
+		return distance;
+	}
+}
@@ -0,0 +1,199 @@
+package msc;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+/* Estimation of simNecOnto by sampling class pairs.
+ *
+ * simNecOnto = 1 - S / (ww (n1 + n2)) with S the sum of w1[i] w2[j] simNec(i, j)
+ * over all pairs and ww = 1 + A + T2 B, A the sum of w1[i], B the sum of
+ * (i + 1) w1[i] and T2 the sum of w2[j]. The weights are averages of simNec
+ * over the other classes, so simNec(c', i) for a random c' != i is an
+ * unbiased estimate of w1[i]. A sample draws i, j and such partners c', c''
+ * and gives unbiased estimates of S, A, B and T2, the estimate of
+ * simNecOnto being formed from their means.
+ *
+ * The classes of o1 are cut in strata by position (B weighs them by
+ * position) and each round takes one sample in every stratum; rounds are
+ * independent observations, from which the confidence interval is derived
+ * by the delta method. Sampling stops once the half width of the interval
+ * is under the error asked for.
+ */
+public class SampledSimilarity {
+
+	private static final int STRATA = 32;
+	private static final int MIN_ROUNDS = 32;
+	private static final int BATCH = 64;
+
+	private static final Metrics.Counter SAMPLED = Metrics.counter("simNecOnto.sampled");
+
+	private final OntologyIndex o1, o2;
+	private final List<OWLClass> classes1, classes2;
+	private final int[] strata;
+	private final long seed;
+
+	// sums over the rounds of (s, a, b, t) and of their pairwise products
+	private long rounds;
+	private final double[] sums = new double[4];
+	private final double[][] products = new double[4][4];
+
+	private SampledSimilarity(OntologyIndex o1, OntologyIndex o2, long seed) {
+		this.o1 = o1;
+		this.o2 = o2;
+		this.classes1 = o1.getClasses();
+		this.classes2 = o2.getClasses();
+		this.seed = seed;
+
+		int h = Math.min(STRATA, classes1.size());
+		this.strata = new int[h + 1];
+		for (int s = 0; s <= h; s++)
+			strata[s] = (int) ((long) s * classes1.size() / h);
+	}
+
+	/* Estimate of simNecOnto(o1, o2) within +/- error with the given confidence (e.g. 0.95),
+	 * using at most maxPairs class pairs. Rounds are evaluated on pool when not null;
+	 * the estimate only depends on the seed, not on the number of threads.
+	 */
+	public static SimilarityEstimate simNecOnto(OntologyIndex o1, OntologyIndex o2, double error, double confidence, long maxPairs, long seed, ForkJoinPool pool) {
+		if (o1.getClasses().size() < 2 || o2.getClasses().size() < 2) {
+			double value = App.simNecOnto(o1, o2, pool);
+			return new SimilarityEstimate(value, 0, 0, true);
+		}
+
+		SampledSimilarity sampling = new SampledSimilarity(o1, o2, seed);
+		double z = quantile(0.5 + confidence / 2);
+		long maxRounds = Math.max(1, maxPairs / (sampling.strata.length - 1));
+		double[][] batch = new double[BATCH][];
+
+		while (true) {
+			SimilarityEvents.SampledRounds event = new SimilarityEvents.SampledRounds();
+			event.begin();
+			int size = (int) Math.min(BATCH, maxRounds - sampling.rounds);
+			long first = sampling.rounds;
+			if (pool == null)
+				for (int r = 0; r < size; r++)
+					batch[r] = sampling.round(first + r);
+			else
+				pool.submit(() -> IntStream.range(0, size).parallel().forEach(r -> batch[r] = sampling.round(first + r))).join();
+			for (int r = 0; r < size; r++)
+				sampling.add(batch[r]);
+
+			double halfWidth = z * sampling.standardError();
+			boolean converged = sampling.rounds >= MIN_ROUNDS && halfWidth <= error;
+
+			SAMPLED.add((long) size * (sampling.strata.length - 1));
+			event.end();
+			if (event.shouldCommit()) {
+				event.rounds = sampling.rounds;
+				event.pairs = sampling.rounds * (sampling.strata.length - 1);
+				event.estimate = sampling.estimate();
+				event.halfWidth = halfWidth;
+				event.commit();
+			}
+			if (converged || sampling.rounds >= maxRounds)
+				return new SimilarityEstimate(sampling.estimate(), halfWidth, sampling.rounds * (sampling.strata.length - 1), converged);
+		}
+	}
+
+	// One sample in every stratum, weighed by the share of the classes of o1 in the stratum
+	private double[] round(long index) {
+		SplittableRandom random = new SplittableRandom(mix(seed + index * 0x9E3779B97F4A7C15L));
+		int n1 = classes1.size(), n2 = classes2.size();
+		double[] result = new double[4];
+
+		for (int s = 0; s + 1 < strata.length; s++) {
+			double share = (double) (strata[s + 1] - strata[s]) / n1;
+			int i = strata[s] + random.nextInt(strata[s + 1] - strata[s]);
+			int j = random.nextInt(n2);
+			OWLClass ci = classes1.get(i), cj = classes2.get(j);
+			OWLClass partner1 = classes1.get(other(random, n1, i)), partner2 = classes2.get(other(random, n2, j));
+
+			double a = App.simNec(o1, o1, partner1, ci);
+			double b = App.simNec(o2, o2, partner2, cj);
+			double similarity = App.simNec(o1, o2, ci, cj);
+
+			result[0] += share * (double) n1 * n2 * a * b * similarity;
+			result[1] += share * n1 * a;
+			result[2] += share * n1 * (i + 1) * a;
+			result[3] += share * n2 * b;
+		}
+		return result;
+	}
+
+	// Seeds of consecutive rounds are scrambled, else their random streams would overlap
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// Uniform position in [0, n[ other than excluded
+	private static int other(SplittableRandom random, int n, int excluded) {
+		int k = random.nextInt(n - 1);
+		return k < excluded ? k : k + 1;
+	}
+
+	private void add(double[] round) {
+		rounds++;
+		for (int x = 0; x < 4; x++) {
+			sums[x] += round[x];
+			for (int y = 0; y < 4; y++)
+				products[x][y] += round[x] * round[y];
+		}
+	}
+
+	private double mean(int x) {
+		return sums[x] / rounds;
+	}
+
+	private double estimate() {
+		double ww = 1 + mean(1) + mean(3) * mean(2);
+		return 1 - mean(0) / (ww * (classes1.size() + classes2.size()));
+	}
+
+	// Standard error of estimate() by the delta method over the covariance of the round means
+	private double standardError() {
+		if (rounds < 2)
+			return Double.POSITIVE_INFINITY;
+
+		double n = classes1.size() + classes2.size();
+		double ww = 1 + mean(1) + mean(3) * mean(2);
+		double[] gradient = {
+				-1 / (ww * n),
+				mean(0) / (ww * ww * n),
+				mean(0) * mean(3) / (ww * ww * n),
+				mean(0) * mean(2) / (ww * ww * n) };
+
+		double variance = 0;
+		for (int x = 0; x < 4; x++)
+			for (int y = 0; y < 4; y++) {
+				double covariance = (products[x][y] - rounds * mean(x) * mean(y)) / (rounds - 1);
+				variance += gradient[x] * gradient[y] * covariance;
+			}
+		return Math.sqrt(Math.max(variance, 0) / rounds);
+	}
+
+	// Quantile of the standard normal distribution (Acklam's approximation, relative error under 1.2e-9)
+	static double quantile(double p) {
+		if (p <= 0 || p >= 1)
+			throw new IllegalArgumentException("Probability " + p);
+
+		double[] a = { -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02, 1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00 };
+		double[] b = { -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02, 6.680131188771972e+01, -1.328068155288572e+01 };
+		double[] c = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00 };
+		double[] d = { 7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00 };
+
+		if (p < 0.02425) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+		if (p > 1 - 0.02425)
+			return -quantile(1 - p);
+		double q = p - 0.5, r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+}
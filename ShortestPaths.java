@@ -3,17 +3,51 @@ package msc;
 import java.util.ArrayList;
 import java.util.List;
 
+/* Necessity distance of a (class, ancestor) pair. The path is only built
+ * when it is asked for, by following the first hops of the ancestor
+ * table, so that a table of pairs does not hold a list of classes per
+ * pair; each pair still costs this object, its key and its map entry.
+ * The path is kept once built: instances are shared between threads,
+ * those asking at once build equal lists and the last one is kept.
+ */
 public class ShortestPaths {
-	List<Vertex> path = new ArrayList<>();
-	Float distance;
-	
+	volatile List<Vertex> path;
+	float distance;
+
+	// Table and ids the path is rebuilt from, null when the path was given
+	private final Vertex[] vertexes;
+	private final AncestorDistances ancestors;
+	private final int source, target;
+
 	public ShortestPaths(List<Vertex> path, Float distance) {
 		this.path = path;
 		this.distance = distance;
+		this.vertexes = null;
+		this.ancestors = null;
+		this.source = -1;
+		this.target = -1;
 	}
-	
+
+	// Pair source -> target of ancestors, the classes of the path being taken from vertexes by id
+	public ShortestPaths(Vertex[] vertexes, AncestorDistances ancestors, int source, int target, float distance) {
+		this.vertexes = vertexes;
+		this.ancestors = ancestors;
+		this.source = source;
+		this.target = target;
+		this.distance = distance;
+	}
+
 	public List<Vertex> getPath() {
-		return path;
+		List<Vertex> result = path;
+		if (result == null && ancestors != null) {
+			int[] ids = ancestors.getShortestPath(source, target);
+			result = new ArrayList<>(ids.length);
+			for (int id : ids)
+				result.add(vertexes[id]);
+			// the list is filled before the volatile write publishes it
+			path = result;
+		}
+		return result;
 	}
 	
 	public void setPath(List<Vertex> path) {
@@ -30,6 +64,6 @@ public class ShortestPaths {
 
 	@Override
 	public String toString() {
-		return this.path.toString() + ", "+ this.distance;
+		return getPath() + ", "+ this.distance;
 	}
 }
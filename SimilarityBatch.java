@@ -0,0 +1,400 @@
+package msc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/* Batch computation of simNec over a stream of class pairs, written as CSV
+ * or JSON lines.
+ *
+ *   java -jar msc.jar batch o1.owl o2.owl pairs.txt scores.csv [--jsonl] [--threads n] [--chunk n] [--metrics]
+ *
+ * Ontologies are OWL documents or snapshots written by HierarchySnapshot.
+ * Pairs are read from a file ("-" for the standard input) with one pair of
+ * class names per line separated by a tab or a comma, lines starting with
+ * # being skipped; "all" instead of the file takes every class of o1 with
+ * every class of o2. Fields after the second are ignored and a name may be
+ * quoted as in the CSV output, so that an output can be read back as pairs. Output goes to a file or "-" for the standard output,
+ * one line per pair in input order. The score is empty (null in JSON) when
+ * simNec is not defined for the pair or a class is unknown.
+ *
+ * Pairs go through a pipeline of fixed size chunks: while a chunk is
+ * written on its own thread the next one is read and computed on the
+ * pool, and a chunk waits for the previous one to be written. At most two
+ * chunks are held whatever the number of pairs, so memory stays constant.
+ * With --metrics the time spent in each stage (see Metrics) is printed on
+ * the standard error at the end.
+ */
+public class SimilarityBatch {
+
+	private static final int CHUNK = 1 << 16;
+
+	private static final Metrics.Histogram COMPUTE_TIME = Metrics.histogram("batch.compute");
+	private static final Metrics.Histogram WRITE_TIME = Metrics.histogram("batch.write");
+
+	private final OntologyIndex o1, o2;
+	private final ForkJoinPool pool;
+	private final boolean jsonl;
+	private long unknown, undefined;
+
+	private SimilarityBatch(OntologyIndex o1, OntologyIndex o2, ForkJoinPool pool, boolean jsonl) {
+		this.o1 = o1;
+		this.o2 = o2;
+		this.pool = pool;
+		this.jsonl = jsonl;
+	}
+
+	/* simNec of every pair read from pairs (every class of o1 with every class of o2 if null) written to out
+	 * by chunks of chunk pairs, computed on pool (sequentially if null). Returns the number of pairs written.
+	 */
+	public static long run(OntologyIndex o1, OntologyIndex o2, BufferedReader pairs, Writer out, boolean jsonl, int chunk, ForkJoinPool pool) throws IOException {
+		if (chunk < 1)
+			throw new IllegalArgumentException("Chunk of " + chunk + " pairs");
+		SimilarityBatch batch = new SimilarityBatch(o1, o2, pool, jsonl);
+		Source source = pairs == null ? batch.new AllPairs() : batch.new PairsReader(pairs);
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		long written = 0;
+
+		try {
+			if (!jsonl)
+				out.write("class1,class2,simNec\n");
+			Future<?> pending = null;
+			while (true) {
+				Chunk next = new Chunk(chunk);
+				source.fill(next);
+				if (next.size == 0)
+					break;
+				batch.compute(next);
+
+				// the previous chunk must be out before this one is handed over, errors of the writer surface here
+				await(pending);
+				pending = writer.submit(() -> {
+					long start = System.nanoTime();
+					batch.write(next, out);
+					WRITE_TIME.recordSince(start);
+					return null;
+				});
+				written += next.size;
+			}
+			await(pending);
+			out.flush();
+		}
+		finally {
+			writer.shutdown();
+		}
+		if (batch.unknown > 0 || batch.undefined > 0)
+			System.err.println(batch.unknown + " pairs with an unknown class, " + batch.undefined + " pairs without simNec");
+		return written;
+	}
+
+	private static void await(Future<?> pending) throws IOException {
+		if (pending == null)
+			return;
+		try {
+			pending.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	// Scores of the pairs whose classes are both known, NaN when simNec is not defined
+	private void compute(Chunk chunk) {
+		SimilarityEvents.BatchChunk event = new SimilarityEvents.BatchChunk();
+		event.begin();
+		long start = System.nanoTime();
+
+		int known = 0;
+		for (int p = 0; p < chunk.size; p++)
+			if (chunk.first[p] != null && chunk.second[p] != null)
+				known++;
+			else
+				unknown++;
+
+		OWLClass[] first = new OWLClass[known], second = new OWLClass[known];
+		int[] positions = new int[known];
+		for (int p = 0, q = 0; p < chunk.size; p++)
+			if (chunk.first[p] != null && chunk.second[p] != null) {
+				first[q] = chunk.first[p];
+				second[q] = chunk.second[p];
+				positions[q++] = p;
+			}
+
+		// a pair whose simNec is not defined gets NaN on its own, the others of the chunk are not affected
+		float[] scores = PairwiseSimilarity.simNec(o1, o2, first, second, pool);
+		Arrays.fill(chunk.scores, 0, chunk.size, Float.NaN);
+		for (int q = 0; q < known; q++) {
+			chunk.scores[positions[q]] = scores[q];
+			if (Float.isNaN(scores[q]))
+				undefined++;
+		}
+
+		COMPUTE_TIME.recordSince(start);
+		event.end();
+		if (event.shouldCommit()) {
+			event.pairs = chunk.size;
+			event.unknown = chunk.size - known;
+			event.commit();
+		}
+	}
+
+	private void write(Chunk chunk, Writer out) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int p = 0; p < chunk.size; p++) {
+			line.setLength(0);
+			float score = chunk.scores[p];
+			if (jsonl) {
+				line.append("{\"class1\": ");
+				json(line, chunk.names1[p]);
+				line.append(", \"class2\": ");
+				json(line, chunk.names2[p]);
+				line.append(", \"simNec\": ").append(Float.isNaN(score) ? "null" : Float.toString(score)).append("}\n");
+			}
+			else {
+				csv(line, chunk.names1[p]);
+				line.append(',');
+				csv(line, chunk.names2[p]);
+				line.append(',');
+				if (!Float.isNaN(score))
+					line.append(score);
+				line.append('\n');
+			}
+			out.append(line);
+		}
+	}
+
+	private static void csv(StringBuilder line, String value) {
+		if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1) {
+			line.append(value);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) == '"')
+				line.append('"');
+			line.append(value.charAt(i));
+		}
+		line.append('"');
+	}
+
+	private static void json(StringBuilder line, String value) {
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				line.append('\\').append(c);
+			else if (c < 0x20)
+				line.append(String.format("\\u%04x", (int) c));
+			else
+				line.append(c);
+		}
+		line.append('"');
+	}
+
+	private OWLClass find(OntologyIndex index, String name) {
+		int id = index.getGraph().getId(name);
+		return id == -1 ? null : index.getClass(id);
+	}
+
+
+	// Pairs of one step of the pipeline, the classes being null when their names are unknown
+	private static class Chunk {
+
+		final String[] names1, names2;
+		final OWLClass[] first, second;
+		final float[] scores;
+		int size;
+
+		Chunk(int capacity) {
+			this.names1 = new String[capacity];
+			this.names2 = new String[capacity];
+			this.first = new OWLClass[capacity];
+			this.second = new OWLClass[capacity];
+			this.scores = new float[capacity];
+		}
+
+		boolean isFull() {
+			return size == scores.length;
+		}
+
+		void add(String name1, OWLClass c1, String name2, OWLClass c2) {
+			names1[size] = name1;
+			names2[size] = name2;
+			first[size] = c1;
+			second[size++] = c2;
+		}
+	}
+
+
+	private interface Source {
+		// Add the next pairs until the chunk is full or the pairs run out
+		void fill(Chunk chunk) throws IOException;
+	}
+
+
+	private class PairsReader implements Source {
+
+		private final BufferedReader in;
+		private boolean first = true;
+
+		PairsReader(BufferedReader in) {
+			this.in = in;
+		}
+
+		@Override
+		public void fill(Chunk chunk) throws IOException {
+			String line;
+			while (!chunk.isFull() && (line = in.readLine()) != null) {
+				String trimmed = line.trim();
+				if (trimmed.isEmpty() || trimmed.startsWith("#"))
+					continue;
+				List<String> fields = split(line, line.indexOf('\t') == -1 ? ',' : '\t');
+				if (fields.size() < 2)
+					throw new IOException("Expected two class names instead of: " + line);
+				// header of a CSV output read back
+				boolean header = first && fields.equals(Arrays.asList("class1", "class2", "simNec"));
+				first = false;
+				if (header)
+					continue;
+
+				String name1 = fields.get(0), name2 = fields.get(1);
+				chunk.add(name1, find(o1, name1), name2, find(o2, name2));
+			}
+		}
+
+		// Fields of a line, trimmed unless quoted. A quoted field has "" for a quote and may go on over the next lines
+		private List<String> split(String line, char separator) throws IOException {
+			List<String> fields = new ArrayList<>();
+			int i = 0;
+			while (true) {
+				while (i < line.length() && line.charAt(i) == ' ')
+					i++;
+				int end;
+				if (i < line.length() && line.charAt(i) == '"') {
+					StringBuilder field = new StringBuilder();
+					i++;
+					while (true) {
+						if (i == line.length()) {
+							line = in.readLine();
+							if (line == null)
+								throw new IOException("Unterminated quoted class name: \"" + field);
+							field.append('\n');
+							i = 0;
+						}
+						else if (line.charAt(i) != '"')
+							field.append(line.charAt(i++));
+						else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+							field.append('"');
+							i += 2;
+						}
+						else
+							break;
+					}
+					end = line.indexOf(separator, i + 1);
+					fields.add(field.toString());
+				}
+				else {
+					end = line.indexOf(separator, i);
+					fields.add(line.substring(i, end == -1 ? line.length() : end).trim());
+				}
+				if (end == -1)
+					return fields;
+				i = end + 1;
+			}
+		}
+	}
+
+
+	// Every class of o1 with every class of o2, row by row
+	private class AllPairs implements Source {
+
+		private final List<OWLClass> classes1 = o1.getClasses(), classes2 = o2.getClasses();
+		private int i, j;
+
+		@Override
+		public void fill(Chunk chunk) {
+			while (!chunk.isFull() && i < classes1.size() && !classes2.isEmpty()) {
+				OWLClass c1 = classes1.get(i), c2 = classes2.get(j);
+				chunk.add(o1.getName(c1), c1, o2.getName(c2), c2);
+				if (++j == classes2.size()) {
+					j = 0;
+					i++;
+				}
+			}
+		}
+	}
+
+
+	// Arguments: o1 o2 pairs output [--jsonl] [--threads n] [--chunk n] [--metrics]
+	public static void main(String[] args) throws IOException, OWLOntologyCreationException {
+		if (args.length < 4) {
+			System.err.println("Usage: batch o1.owl o2.owl (pairs.txt|-|all) (output|-) [--jsonl] [--threads n] [--chunk n] [--metrics]");
+			return;
+		}
+		boolean jsonl = false, metrics = false;
+		int threads = Runtime.getRuntime().availableProcessors(), chunk = CHUNK;
+		for (int i = 4; i < args.length; i++)
+			if (args[i].equals("--jsonl"))
+				jsonl = true;
+			else if (args[i].equals("--threads") && i + 1 < args.length)
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--chunk") && i + 1 < args.length) {
+				chunk = Integer.parseInt(args[++i]);
+				if (chunk < 1)
+					throw new IllegalArgumentException("Chunk of " + chunk + " pairs");
+			}
+			else if (args[i].equals("--metrics"))
+				metrics = true;
+			else
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		OntologyIndex o1 = App.loadIndex(new File(args[0]), pool);
+		OntologyIndex o2 = args[1].equals(args[0]) ? o1 : App.loadIndex(new File(args[1]), pool);
+
+		BufferedReader pairs = null;
+		if (args[2].equals("-"))
+			pairs = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		else if (!args[2].equals("all"))
+			pairs = Files.newBufferedReader(Paths.get(args[2]), StandardCharsets.UTF_8);
+
+		Writer out = args[3].equals("-") ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)
+				: new BufferedWriter(Files.newBufferedWriter(Paths.get(args[3]), StandardCharsets.UTF_8), 1 << 16);
+		try {
+			long written = run(o1, o2, pairs, out, jsonl, chunk, pool);
+			System.err.println(written + " pairs written");
+			if (metrics)
+				System.err.print(Metrics.report());
+		}
+		finally {
+			out.close();
+			if (pairs != null)
+				pairs.close();
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package msc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+/* Bounded cache of the results of simNec, getLCS and distance for class
+ * pairs asked again and again.
+ *
+ * Results are keyed by the fingerprints of the two indexes and the ids of
+ * the classes: an edited ontology gets an index with another fingerprint,
+ * whose results never meet the ones computed before the edit, while the
+ * stale entries age out. Entries are spread over segments, each one a
+ * LinkedHashMap in access order evicting its least recently used entry,
+ * so that threads mostly lock different segments. A result is computed
+ * outside of the lock; threads missing the same key at once compute it
+ * each and store the same value.
+ *
+ * Pairs with a class outside of its index, and calls that throw (no LCS,
+ * distance to a root that is not an ancestor), are not cached.
+ */
+public class SimilarityCache {
+
+	private static final int SEGMENTS = 16;
+	private static final int SIM_NEC = 0, LCS = 1, DISTANCE = 2;
+	private static final String[] KINDS = { "simNec", "lcs", "distance" };
+	// totals of all the caches, the fields below count the lookups of this one
+	private static final Metrics.Counter HITS = Metrics.counter("cache.hits");
+	private static final Metrics.Counter MISSES = Metrics.counter("cache.misses");
+	// getLCS result standing for null in the segments
+	private static final Object NO_LCS = new Object();
+
+	private final Segment[] segments;
+	private final long capacity;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	// Cache of at most capacity results
+	public SimilarityCache(long capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity " + capacity);
+		this.capacity = capacity;
+		// a power of 2 segments, fewer than SEGMENTS for a tiny capacity
+		this.segments = new Segment[Integer.highestOneBit((int) Math.min(SEGMENTS, capacity))];
+		int perSegment = (int) Math.min(Integer.MAX_VALUE, capacity / segments.length);
+		for (int s = 0; s < segments.length; s++)
+			segments[s] = new Segment(perSegment, evictions);
+	}
+
+	public Float simNec(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2) {
+		Key key = key(SIM_NEC, o1, o2, c1, c2);
+		if (key == null)
+			return App.simNec(o1, o2, c1, c2);
+		Object value = get(key);
+		if (value == null) {
+			value = App.simNec(o1, o2, c1, c2);
+			put(key, value);
+		}
+		return (Float) value;
+	}
+
+	public OWLClass getLCS(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2) {
+		Key key = key(LCS, o1, o2, c1, c2);
+		if (key == null)
+			return App.getLCS(o1, o2, c1, c2);
+		Object value = get(key);
+		if (value == null) {
+			OWLClass lcs = App.getLCS(o1, o2, c1, c2);
+			value = lcs == null ? NO_LCS : lcs;
+			put(key, value);
+		}
+		return value == NO_LCS ? null : (OWLClass) value;
+	}
+
+	public Float distance(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2) {
+		Key key = key(DISTANCE, o1, o2, c1, c2);
+		if (key == null)
+			return App.distance(o1, o2, c1, c2);
+		Object value = get(key);
+		if (value == null) {
+			value = App.distance(o1, o2, c1, c2);
+			put(key, value);
+		}
+		return (Float) value;
+	}
+
+	private static Key key(int kind, OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2) {
+		int id1 = o1.getId(c1), id2 = o2.getId(c2);
+		if (id1 == -1 || id2 == -1)
+			return null;
+		return new Key(kind, o1.getFingerprint(), o2.getFingerprint(), id1, id2);
+	}
+
+	private Object get(Key key) {
+		SimilarityEvents.CacheLookup event = new SimilarityEvents.CacheLookup();
+		event.begin();
+		Object value = segment(key).get(key);
+		if (value == null) {
+			misses.increment();
+			MISSES.increment();
+		}
+		else {
+			hits.increment();
+			HITS.increment();
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.kind = KINDS[key.kind];
+			event.hit = value != null;
+			event.commit();
+		}
+		return value;
+	}
+
+	private void put(Key key, Object value) {
+		segment(key).put(key, value);
+	}
+
+	private Segment segment(Key key) {
+		return segments[(key.hashCode() >>> 16) & (segments.length - 1)];
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	// Number of results held
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments)
+			size += segment.size();
+		return size;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	// Number of results dropped to make room for newer ones
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	// Share of the lookups answered from the cache, 0 before any lookup
+	public double getHitRate() {
+		long hit = getHits(), total = hit + getMisses();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+
+	// Drop every result, the counters are kept
+	public void clear() {
+		for (Segment segment : segments)
+			segment.clear();
+	}
+
+	@Override
+	public String toString() {
+		return size() + "/" + capacity + " results, " + getHits() + " hits, " + getMisses() + " misses, " + getEvictions() + " evictions";
+	}
+
+
+	private static final class Key {
+
+		private final int kind;
+		private final long fingerprint1, fingerprint2;
+		private final int id1, id2;
+		private final int hash;
+
+		Key(int kind, long fingerprint1, long fingerprint2, int id1, int id2) {
+			this.kind = kind;
+			this.fingerprint1 = fingerprint1;
+			this.fingerprint2 = fingerprint2;
+			this.id1 = id1;
+			this.id2 = id2;
+
+			long h = fingerprint1 * 31 + fingerprint2;
+			h = (h * 31 + kind) * 0x9E3779B97F4A7C15L + (((long) id1 << 32) | (id2 & 0xFFFFFFFFL));
+			h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+			this.hash = (int) (h ^ (h >>> 33));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return kind == other.kind && id1 == other.id1 && id2 == other.id2
+					&& fingerprint1 == other.fingerprint1 && fingerprint2 == other.fingerprint2;
+		}
+	}
+
+
+	// Part of the entries in least recently used order, guarded by its own lock
+	private static final class Segment extends LinkedHashMap<Key, Object> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		private final LongAdder evictions;
+
+		Segment(int capacity, LongAdder evictions) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+
+		@Override
+		public synchronized Object get(Object key) {
+			return super.get(key);
+		}
+
+		@Override
+		public synchronized Object put(Key key, Object value) {
+			return super.put(key, value);
+		}
+
+		@Override
+		public synchronized int size() {
+			return super.size();
+		}
+
+		@Override
+		public synchronized void clear() {
+			super.clear();
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+			if (size() <= capacity)
+				return false;
+			evictions.increment();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package msc;
+
+// Approximate value of a similarity with the half width of its confidence interval
+public class SimilarityEstimate {
+	private final double value;
+	private final double error;
+	private final long pairs;
+	private final boolean converged;
+
+	public SimilarityEstimate(double value, double error, long pairs, boolean converged) {
+		this.value = value;
+		this.error = error;
+		this.pairs = pairs;
+		this.converged = converged;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	// Half width of the confidence interval
+	public double getError() {
+		return error;
+	}
+
+	public double getLower() {
+		return value - error;
+	}
+
+	public double getUpper() {
+		return value + error;
+	}
+
+	// Number of class pairs sampled, 0 when the value is exact
+	public long getPairs() {
+		return pairs;
+	}
+
+	// Whether the error asked for was reached before the sampling budget ran out
+	public boolean isConverged() {
+		return converged;
+	}
+
+	@Override
+	public String toString() {
+		return value + " +/- " + error + " (" + pairs + " pairs)";
+	}
+}
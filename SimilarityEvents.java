@@ -0,0 +1,196 @@
+package msc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/* Flight Recorder events of the similarity pipeline, shown under the
+ * "Semantic Similarity" category of a recording:
+ *
+ *   java -XX:StartFlightRecording=filename=msc.jfr -jar msc.jar batch ...
+ *   jfr print --categories "Semantic Similarity" msc.jfr
+ *
+ * Events are duration events begun and committed around the stage they
+ * describe; their fields are only filled when shouldCommit() says the
+ * event is recorded, so they cost next to nothing without a recording.
+ * Per search and per lookup events are frequent and carry no stack trace;
+ * LCS computations are only recorded above 100 us (the lcs histogram of
+ * Metrics has all of them) and cache lookups are off unless enabled in the
+ * recording settings (msc.CacheLookup#enabled=true).
+ */
+public final class SimilarityEvents {
+
+	private static final String CATEGORY = "Semantic Similarity";
+
+	private SimilarityEvents() {
+	}
+
+
+	@Name("msc.OntologyLoad")
+	@Label("Ontology Load")
+	@Category(CATEGORY)
+	@Description("Loading of an ontology, parsed by the OWL API or read from a HierarchySnapshot")
+	public static final class OntologyLoad extends Event {
+
+		@Label("Source")
+		String source;
+
+		@Label("Classes")
+		int classes;
+	}
+
+
+	@Name("msc.GraphBuild")
+	@Label("Graph Build")
+	@Category(CATEGORY)
+	@Description("Construction of the necessity graph of an ontology by App.setEdges")
+	public static final class GraphBuild extends Event {
+
+		@Label("Classes")
+		int classes;
+
+		@Label("Edges")
+		int edges;
+	}
+
+
+	@Name("msc.DijkstraSearch")
+	@Label("Dijkstra Search")
+	@Category(CATEGORY)
+	@Description("Shortest path search from one class, until its state is given back")
+	@StackTrace(false)
+	public static final class DijkstraSearch extends Event {
+
+		@Label("Source")
+		int source;
+
+		@Label("Graph Classes")
+		int graphClasses;
+
+		@Label("Settled")
+		@Description("Classes whose distance was made final")
+		int settled;
+
+		@Label("Relaxed")
+		@Description("Edges going out of the settled classes")
+		int relaxed;
+	}
+
+
+	@Name("msc.LCS")
+	@Label("LCS")
+	@Category(CATEGORY)
+	@Description("Least common subsumer of two classes computed by App.getLCS")
+	@StackTrace(false)
+	@Threshold("100 us")
+	public static final class LcsComputation extends Event {
+
+		@Label("Class 1")
+		String class1;
+
+		@Label("Class 2")
+		String class2;
+
+		@Label("LCS")
+		String lcs;
+	}
+
+
+	@Name("msc.CacheLookup")
+	@Label("Cache Lookup")
+	@Category(CATEGORY)
+	@Description("Lookup of a pair result in a SimilarityCache")
+	@StackTrace(false)
+	@Enabled(false)
+	public static final class CacheLookup extends Event {
+
+		@Label("Kind")
+		String kind;
+
+		@Label("Hit")
+		boolean hit;
+	}
+
+
+	@Name("msc.SimNecOnto")
+	@Label("simNecOnto")
+	@Category(CATEGORY)
+	@Description("Similarity of two ontologies over every class pair, by TiledSimilarity")
+	public static final class SimNecOnto extends Event {
+
+		@Label("Classes 1")
+		int classes1;
+
+		@Label("Classes 2")
+		int classes2;
+
+		@Label("Tiles")
+		int tiles;
+
+		@Label("Value")
+		double value;
+	}
+
+
+	@Name("msc.SimNecOntoTile")
+	@Label("simNecOnto Tile")
+	@Category(CATEGORY)
+	@Description("One tile of simNecOnto; the tiles done over the tiles of the computation give its progress")
+	@StackTrace(false)
+	public static final class SimNecOntoTile extends Event {
+
+		@Label("Tile")
+		int tile;
+
+		@Label("Tiles Done")
+		int done;
+
+		@Label("Tiles")
+		int tiles;
+
+		@Label("Pairs")
+		int pairs;
+	}
+
+
+	@Name("msc.SampledSimNecOnto")
+	@Label("Sampled simNecOnto")
+	@Category(CATEGORY)
+	@Description("Batch of sampling rounds of SampledSimilarity, with the confidence interval reached so far")
+	@StackTrace(false)
+	public static final class SampledRounds extends Event {
+
+		@Label("Rounds")
+		long rounds;
+
+		@Label("Pairs")
+		long pairs;
+
+		@Label("Estimate")
+		double estimate;
+
+		@Label("Half Width")
+		double halfWidth;
+	}
+
+
+	@Name("msc.BatchChunk")
+	@Label("Batch Chunk")
+	@Category(CATEGORY)
+	@Description("Computation of one chunk of pairs by SimilarityBatch")
+	@StackTrace(false)
+	public static final class BatchChunk extends Event {
+
+		@Label("Pairs")
+		int pairs;
+
+		@Label("Unknown")
+		@Description("Pairs with a class missing from its ontology")
+		int unknown;
+	}
+}
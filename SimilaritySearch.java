@@ -0,0 +1,158 @@
+package msc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+/* Search of the classes of an ontology most similar to a given class.
+ *
+ * simNec(c1, c2) = D / (d1 + d2 + D) with d1, d2 the distances from c1 and
+ * c2 to their LCS and D twice the distance from the LCS to the roots. The
+ * LCS is a superclass of c1 (or c1 itself), so for each such class a, with
+ * Dmax(a) >= D twice the distance from a to one of the roots of o2 and
+ * d2 >= 1 since every edge weighs at least 1, the bound
+ *   U(a) = Dmax(a) / (d1(a) + 1 + Dmax(a))
+ * holds for every class of o2 whose LCS with c1 is a. The superclasses of
+ * c1, taken in o2 through their labels, are visited by decreasing bound,
+ * each one giving its subclasses in o2 as candidates, and the search stops as soon as the bound falls under the
+ * k-th best similarity found: classes not reached yet cannot do better.
+ */
+public class SimilaritySearch {
+
+	// The k classes of o2 most similar to c1 (c1 itself excluded when o1 == o2), most similar first.
+	// Classes without any common superclass with c1 are not ranked.
+	public static List<ClassSimilarity> topK(OntologyIndex o1, OWLClass c1, OntologyIndex o2, int k) {
+		if (k <= 0 || o1.getId(c1) == -1)
+			return Collections.emptyList();
+
+		// candidate LCS: the classes of o2 with the label of a superclass of c1 or of c1 itself, aligned as App.getLCS does
+		int id1 = o1.getId(c1);
+		CommonSubsumers subsumers = new CommonSubsumers(o1, o2, id1);
+		int[] selves = o1 == o2 ? new int[] { id1 } : o1.getAlignment(o2).getSeconds(id1);
+		int count = subsumers.size() + selves.length;
+		int[] lcs = new int[count];
+		float[] bounds = new float[count];
+
+		for (int i = 0; i < count; i++) {
+			boolean self = i >= subsumers.size();
+			lcs[i] = self ? selves[i - subsumers.size()] : subsumers.getId(i);
+			float d1 = self ? 1 : subsumers.getDistance(i);
+			float dMax = 2 * getRootDistanceBound(o2, lcs[i]);
+			bounds[i] = dMax / (d1 + 1 + dMax);
+		}
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++)
+			order[i] = i;
+		Arrays.sort(order, (x, y) -> Float.compare(bounds[y], bounds[x]));
+
+		Results results = new Results(k);
+		HierarchyGraph subclasses = o2.getSubClassGraph();
+		boolean[] visited = new boolean[o2.getGraph().size()];
+		int[] queue = new int[visited.length];
+		int self = o1 == o2 ? o1.getId(c1) : -1;
+
+		// a class with the name of c1 has similarity 1 whatever its superclasses, as App.simNec decides by name
+		int same = o2.getId(c1);
+		if (same != -1 && same != self)
+			results.offer(same, 1);
+
+		for (int i : order) {
+			if (results.isFull() && bounds[i] < results.getWorst())
+				break;
+			if (visited[lcs[i]])
+				continue;
+
+			// a and its subclasses not reached from a previous superclass of c1
+			int head = 0, tail = 0;
+			visited[lcs[i]] = true;
+			queue[tail++] = lcs[i];
+			while (head < tail) {
+				int c2 = queue[head++];
+				if (c2 != self && c2 != same)
+					evaluate(o1, c1, o2, c2, subsumers, results);
+				for (int e = subclasses.getEdgesStart(c2); e < subclasses.getEdgesEnd(c2); e++)
+					if (!visited[subclasses.getTarget(e)]) {
+						visited[subclasses.getTarget(e)] = true;
+						queue[tail++] = subclasses.getTarget(e);
+					}
+			}
+		}
+		return results.toList(o2);
+	}
+
+	private static void evaluate(OntologyIndex o1, OWLClass c1, OntologyIndex o2, int id, CommonSubsumers subsumers, Results results) {
+		OWLClass c2 = o2.getClass(id);
+		// the LCS of a root is the root itself
+		boolean root = o1.getRoots().contains(c1) || o2.getRoots().contains(c2);
+		OWLClass lcs = root ? App.getLCS(o1, o2, c1, c2) : subsumers.getLCS(id);
+		if (lcs != null)
+			results.offer(id, App.simNec(o1, o2, c1, c2, lcs));
+	}
+
+	// Upper bound of the distance from a class of o to the roots: 1 for a root, else its distance to any root above it
+	private static float getRootDistanceBound(OntologyIndex o, int id) {
+		OWLClass cls = o.getClass(id);
+		if (o.getRoots().contains(cls))
+			return 1;
+		AncestorDistances ancestors = o.getAncestorDistances();
+		float bound = Float.MAX_VALUE;
+		if (ancestors == null) {
+			for (OWLClass root : o.getRoots()) {
+				// a root outside of the graph (owl:Thing) has id -1 and distance NaN
+				float distance = o.getDistance(id, o.getId(root));
+				if (!Float.isNaN(distance))
+					bound = Math.min(bound, distance);
+			}
+			return bound;
+		}
+		for (int k = ancestors.getRowStart(id); k < ancestors.getRowEnd(id); k++)
+			if (o.getRoots().contains(o.getClass(ancestors.getAncestor(k))))
+				bound = Math.min(bound, ancestors.getDistance(k));
+		return bound;
+	}
+
+
+	// Best k (class id, similarity) found so far, the worst one on top of the heap
+	private static class Results {
+
+		private final int k;
+		private final PriorityQueue<long[]> heap;
+
+		Results(int k) {
+			this.k = k;
+			// entries are {id, similarity bits}, lower similarity then higher id first
+			this.heap = new PriorityQueue<>(k + 1, (x, y) -> {
+				int bySimilarity = Float.compare(Float.intBitsToFloat((int) x[1]), Float.intBitsToFloat((int) y[1]));
+				return bySimilarity != 0 ? bySimilarity : Long.compare(y[0], x[0]);
+			});
+		}
+
+		boolean isFull() {
+			return heap.size() == k;
+		}
+
+		float getWorst() {
+			return Float.intBitsToFloat((int) heap.peek()[1]);
+		}
+
+		void offer(int id, float similarity) {
+			heap.offer(new long[] { id, Float.floatToIntBits(similarity) });
+			if (heap.size() > k)
+				heap.poll();
+		}
+
+		List<ClassSimilarity> toList(OntologyIndex o) {
+			List<ClassSimilarity> list = new ArrayList<>(heap.size());
+			while (!heap.isEmpty()) {
+				long[] entry = heap.poll();
+				list.add(new ClassSimilarity(o.getClass((int) entry[0]), Float.intBitsToFloat((int) entry[1])));
+			}
+			Collections.reverse(list);
+			return list;
+		}
+	}
+}
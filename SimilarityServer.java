@@ -0,0 +1,366 @@
+package msc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/* Long running HTTP server on localhost keeping named ontologies and their
+ * indexes in memory, so that a lookup pays neither parsing nor compilation.
+ * Classes are given by name (IRI fragment) and answers are JSON:
+ *
+ *   POST /load?name=body&file=body.owl   (or url=http://...)         load or replace an ontology
+ *   GET  /ontologies                                                  names and numbers of classes
+ *   GET  /simNec?o1=body&o2=mesh&c1=Heart&c2=Lung
+ *   GET  /lcs?o1=body&o2=mesh&c1=Heart&c2=Lung
+ *   GET  /distance?o1=body&o2=mesh&c1=Heart&c2=Lung
+ *   GET  /topk?o1=body&o2=mesh&c1=Heart&k=10
+ *   GET  /metrics                                                     counters and latencies of Metrics
+ *
+ * A file may also be a snapshot written by HierarchySnapshot, loaded
+ * without parsing. Every request runs on its own virtual thread when the JVM has them, on a
+ * cached pool of threads otherwise. Pair results go through a
+ * SimilarityCache shared by all requests.
+ *
+ * A web page can send a simple POST to localhost from another origin, so
+ * /load only accepts requests of Content-Type application/json: a browser
+ * must ask a preflight for them, which the server does not grant. Files
+ * are resolved in the load directory given to the server and must stay
+ * inside it; without one, only urls can be loaded. Urls must be http or
+ * https, a file: or jar: url would read any file of the server.
+ */
+public class SimilarityServer {
+
+	private static final int CACHE_CAPACITY = 1 << 20;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Path loadDirectory;
+	private final Map<String, OntologyIndex> ontologies = new ConcurrentHashMap<>();
+	private final SimilarityCache cache = new SimilarityCache(CACHE_CAPACITY);
+
+	// Server listening on localhost:port, 0 for any free port, loading no file
+	public SimilarityServer(int port) throws IOException {
+		this(port, null);
+	}
+
+	// Same loading the files of loadDirectory (none if null)
+	public SimilarityServer(int port, Path loadDirectory) throws IOException {
+		this.loadDirectory = loadDirectory == null ? null : loadDirectory.toRealPath();
+		// small answers would otherwise wait for the delayed ACK of the client (about 40 ms)
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = newRequestExecutor();
+		server.setExecutor(executor);
+
+		server.createContext("/load", handler("POST", this::load));
+		server.createContext("/ontologies", handler("GET", this::list));
+		server.createContext("/simNec", handler("GET", query -> {
+			Pair pair = pair(query);
+			return "{\"simNec\": " + number(cache.simNec(pair.o1, pair.o2, pair.c1, pair.c2)) + "}";
+		}));
+		server.createContext("/lcs", handler("GET", query -> {
+			Pair pair = pair(query);
+			OWLClass lcs = cache.getLCS(pair.o1, pair.o2, pair.c1, pair.c2);
+			return "{\"lcs\": " + (lcs == null ? "null" : string(pair.o1.getName(lcs))) + "}";
+		}));
+		server.createContext("/distance", handler("GET", query -> {
+			Pair pair = pair(query);
+			return "{\"distance\": " + number(cache.distance(pair.o1, pair.o2, pair.c1, pair.c2)) + "}";
+		}));
+		server.createContext("/topk", handler("GET", this::topK));
+		server.createContext("/metrics", handler("GET", query -> Metrics.toJson()));
+	}
+
+	// Executor giving each task a virtual thread (Java 21), looked up by reflection since the code targets Java 11
+	static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	// Stop accepting requests, waiting at most delay seconds for the ones under way
+	public void stop(int delay) {
+		server.stop(delay);
+		executor.shutdown();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public SimilarityCache getCache() {
+		return cache;
+	}
+
+	// Make an ontology already loaded available under name, replacing the previous one
+	public void register(String name, OntologyIndex index) {
+		ontologies.put(name, index);
+	}
+
+	public OntologyIndex getOntology(String name) {
+		return ontologies.get(name);
+	}
+
+	private String load(Map<String, String> query) throws OWLOntologyCreationException, IOException {
+		String name = required(query, "name");
+		OntologyIndex index;
+		if (query.containsKey("file"))
+			index = App.loadIndex(loadable(query.get("file")).toFile(), null);
+		else
+			index = new OntologyIndex(App.loadOntologyWeb(webUrl(required(query, "url"))));
+
+		register(name, index);
+		return "{\"name\": " + string(name) + ", \"classes\": " + index.getClasses().size() + "}";
+	}
+
+	// File of the load directory, symbolic links being followed before checking it is inside
+	private Path loadable(String file) throws IOException {
+		if (loadDirectory == null)
+			throw new RequestException(403, "Loading files is disabled");
+		Path path;
+		try {
+			path = loadDirectory.resolve(file).toRealPath();
+		}
+		catch (NoSuchFileException e) {
+			throw new RequestException(404, "No file " + file);
+		}
+		if (!path.startsWith(loadDirectory))
+			throw new RequestException(403, file + " is outside of the load directory");
+		return path;
+	}
+
+	// Url of an ontology on the web, the other schemes are refused
+	private static String webUrl(String url) {
+		URI uri;
+		try {
+			uri = new URI(url);
+		}
+		catch (URISyntaxException e) {
+			throw new RequestException(400, "Malformed url " + url);
+		}
+		if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null)
+			throw new RequestException(403, "Only http and https urls can be loaded");
+		return url;
+	}
+
+	private String list(Map<String, String> query) {
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, OntologyIndex> entry : new TreeMap<>(ontologies).entrySet()) {
+			if (json.length() > 1)
+				json.append(", ");
+			json.append(string(entry.getKey())).append(": {\"classes\": ").append(entry.getValue().getClasses().size()).append('}');
+		}
+		return json.append('}').toString();
+	}
+
+	private String topK(Map<String, String> query) {
+		OntologyIndex o1 = ontology(query, "o1"), o2 = ontology(query, "o2");
+		OWLClass c1 = cls(o1, query, "c1");
+		int k;
+		try {
+			k = Integer.parseInt(required(query, "k"));
+		}
+		catch (NumberFormatException e) {
+			throw new RequestException(400, "k is not a number");
+		}
+
+		StringBuilder json = new StringBuilder("[");
+		List<ClassSimilarity> similar = App.topK(o1, o2, c1, k);
+		for (ClassSimilarity similarity : similar) {
+			if (json.length() > 1)
+				json.append(", ");
+			json.append("{\"class\": ").append(string(o2.getName(similarity.getCls())))
+					.append(", \"similarity\": ").append(number(similarity.getSimilarity())).append('}');
+		}
+		return json.append(']').toString();
+	}
+
+	private Pair pair(Map<String, String> query) {
+		OntologyIndex o1 = ontology(query, "o1"), o2 = ontology(query, "o2");
+		return new Pair(o1, o2, cls(o1, query, "c1"), cls(o2, query, "c2"));
+	}
+
+	private OntologyIndex ontology(Map<String, String> query, String parameter) {
+		String name = required(query, parameter);
+		OntologyIndex index = ontologies.get(name);
+		if (index == null)
+			throw new RequestException(404, "No ontology " + name);
+		return index;
+	}
+
+	private static OWLClass cls(OntologyIndex index, Map<String, String> query, String parameter) {
+		String name = required(query, parameter);
+		int id = index.getGraph().getId(name);
+		if (id == -1 || index.getClass(id) == null)
+			throw new RequestException(404, "No class " + name);
+		return index.getClass(id);
+	}
+
+	private static String required(Map<String, String> query, String parameter) {
+		String value = query.get(parameter);
+		if (value == null || value.isEmpty())
+			throw new RequestException(400, "Missing parameter " + parameter);
+		return value;
+	}
+
+	private static Map<String, String> parseQuery(String raw) {
+		Map<String, String> query = new HashMap<>();
+		if (raw == null)
+			return query;
+		for (String parameter : raw.split("&")) {
+			int equals = parameter.indexOf('=');
+			if (equals > 0)
+				query.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+						URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+		}
+		return query;
+	}
+
+	private static String number(Float value) {
+		return value == null || value.isNaN() || value.isInfinite() ? "null" : value.toString();
+	}
+
+	private static String string(String value) {
+		StringBuilder json = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		}
+		return json.append('"').toString();
+	}
+
+	/* Handler answering the JSON computed from the query parameters, or an error:
+	 * 400 for a bad request, 403 for a file that may not be loaded, 404 for an
+	 * unknown ontology, class or file, 405 for another method, 415 for a POST
+	 * that is not application/json, 422 when the measure is not defined for the
+	 * classes (no LCS, a root above only some of them) and 500 for anything else.
+	 */
+	private static HttpHandler handler(String method, Action action) {
+		return exchange -> {
+			int status = 200;
+			String json;
+			try {
+				if (!exchange.getRequestMethod().equals(method))
+					throw new RequestException(405, "Use " + method);
+				if (method.equals("POST") && !isJson(exchange.getRequestHeaders().getFirst("Content-Type")))
+					throw new RequestException(415, "Use Content-Type: application/json");
+				json = action.answer(parseQuery(exchange.getRequestURI().getRawQuery()));
+			}
+			catch (RequestException e) {
+				status = e.status;
+				json = "{\"error\": " + string(e.getMessage()) + "}";
+			}
+			catch (UndefinedSimilarityException e) {
+				status = 422;
+				json = "{\"error\": " + string(e.getMessage()) + "}";
+			}
+			catch (Exception e) {
+				status = 500;
+				json = "{\"error\": " + string(String.valueOf(e.getMessage())) + "}";
+			}
+			send(exchange, status, json);
+		};
+	}
+
+	// Whether a Content-Type is application/json, whatever its parameters
+	private static boolean isJson(String contentType) {
+		return contentType != null && contentType.split(";")[0].trim().equalsIgnoreCase("application/json");
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	// Arguments: port, then --load-dir directory for POST /load, then name=file pairs of ontologies loaded before serving
+	public static void main(String[] args) throws IOException, OWLOntologyCreationException {
+		int first = 1;
+		Path loadDirectory = null;
+		if (args.length > 2 && args[1].equals("--load-dir")) {
+			loadDirectory = Paths.get(args[2]);
+			first = 3;
+		}
+		SimilarityServer server = new SimilarityServer(args.length > 0 ? Integer.parseInt(args[0]) : 8080, loadDirectory);
+		for (int i = first; i < args.length; i++) {
+			int equals = args[i].indexOf('=');
+			if (equals <= 0)
+				throw new IllegalArgumentException("Expected name=file instead of " + args[i]);
+			server.register(args[i].substring(0, equals), App.loadIndex(new File(args[i].substring(equals + 1)), null));
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+		server.start();
+		System.out.println("Serving on http://localhost:" + server.getPort());
+	}
+
+
+	private interface Action {
+		String answer(Map<String, String> query) throws Exception;
+	}
+
+
+	private static class Pair {
+
+		final OntologyIndex o1, o2;
+		final OWLClass c1, c2;
+
+		Pair(OntologyIndex o1, OntologyIndex o2, OWLClass c1, OWLClass c2) {
+			this.o1 = o1;
+			this.o2 = o2;
+			this.c1 = c1;
+			this.c2 = c2;
+		}
+	}
+
+
+	private static class RequestException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		final int status;
+
+		RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package msc;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+/* Evaluation of simNecOnto over the class x class space cut in tiles of
+ * TILE x TILE pairs, the class weights being read from the weight vectors
+ * of the indexes. Tiles are independent and can run on a ForkJoinPool;
+ * each one stores its partial sum in its own slot and the slots are added
+ * in tile order afterwards, so the result does not depend on the number
+ * of threads nor on the order in which tiles finish.
+ *
+ * Progress is counted in the metrics and each tile done is a JFR event
+ * carrying the number of tiles done so far.
+ */
+public class TiledSimilarity {
+
+	public static final int TILE = 64;
+
+	private static final Metrics.Histogram TIME = Metrics.histogram("simNecOnto");
+	private static final Metrics.Counter TILES = Metrics.counter("simNecOnto.tiles");
+	private static final Metrics.Counter PAIRS = Metrics.counter("simNecOnto.pairs");
+
+	private final OntologyIndex o1, o2;
+	private final List<OWLClass> classes1, classes2;
+	private final int tileRows, tileColumns;
+	private final double[] partials;
+	private final float[] weights1, weights2;
+	private final AtomicInteger done = new AtomicInteger();
+
+	private TiledSimilarity(OntologyIndex o1, OntologyIndex o2, ForkJoinPool pool) {
+		this.o1 = o1;
+		this.o2 = o2;
+		this.classes1 = o1.getClasses();
+		this.classes2 = o2.getClasses();
+		this.tileRows = (classes1.size() + TILE - 1) / TILE;
+		this.tileColumns = (classes2.size() + TILE - 1) / TILE;
+		this.partials = new double[tileRows * tileColumns];
+		this.weights1 = o1.getWeights(pool);
+		this.weights2 = o2.getWeights(pool);
+	}
+
+	// Necessary semantic similarity of two ontologies, tiles being evaluated on pool (sequentially if null)
+	public static double simNecOnto(OntologyIndex o1, OntologyIndex o2, ForkJoinPool pool) {
+		SimilarityEvents.SimNecOnto event = new SimilarityEvents.SimNecOnto();
+		event.begin();
+		long start = System.nanoTime();
+
+		TiledSimilarity tiles = new TiledSimilarity(o1, o2, pool);
+		if (pool == null)
+			for (int tile = 0; tile < tiles.partials.length; tile++)
+				tiles.computeTile(tile);
+		else
+			pool.invoke(new TilesTask(tiles, 0, tiles.partials.length));
+		double value = tiles.reduce();
+
+		TIME.recordSince(start);
+		event.end();
+		if (event.shouldCommit()) {
+			event.classes1 = tiles.classes1.size();
+			event.classes2 = tiles.classes2.size();
+			event.tiles = tiles.partials.length;
+			event.value = value;
+			event.commit();
+		}
+		return value;
+	}
+
+	private void computeTile(int tile) {
+		SimilarityEvents.SimNecOntoTile event = new SimilarityEvents.SimNecOntoTile();
+		event.begin();
+		int row = tile / tileColumns, column = tile % tileColumns;
+		int from1 = row * TILE, to1 = Math.min(from1 + TILE, classes1.size());
+		int from2 = column * TILE, to2 = Math.min(from2 + TILE, classes2.size());
+
+		double sum = 0;
+		for (int i = from1; i < to1; i++)
+			for (int j = from2; j < to2; j++)
+				sum += (double) weights1[i] * weights2[j] * App.simNec(o1, o2, classes1.get(i), classes2.get(j));
+		partials[tile] = sum;
+
+		int pairs = (to1 - from1) * (to2 - from2), tilesDone = done.incrementAndGet();
+		TILES.increment();
+		PAIRS.add(pairs);
+		event.end();
+		if (event.shouldCommit()) {
+			event.tile = tile;
+			event.done = tilesDone;
+			event.tiles = partials.length;
+			event.pairs = pairs;
+			event.commit();
+		}
+	}
+
+	private double reduce() {
+		double simNec1 = 0;
+		for (double partial : partials)
+			simNec1 += partial;
+
+		// w grows by the weight of every class of o2 for each class of o1 visited,
+		// ww accumulates w times the weight of the class of o1
+		double total2 = 0;
+		for (float w : weights2)
+			total2 += w;
+		double ww = 1;
+		for (int i = 0; i < weights1.length; i++)
+			ww += (1 + (i + 1) * total2) * weights1[i];
+
+		return 1 - (simNec1 / (ww * (classes1.size() + classes2.size()))); // necessary semantic similarity
+	}
+
+
+	private static class TilesTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final TiledSimilarity tiles;
+		private final int from, to;
+
+		TilesTask(TiledSimilarity tiles, int from, int to) {
+			this.tiles = tiles;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				for (int tile = from; tile < to; tile++)
+					tiles.computeTile(tile);
+			}
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TilesTask(tiles, from, middle), new TilesTask(tiles, middle, to));
+			}
+		}
+	}
+}
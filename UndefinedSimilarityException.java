@@ -0,0 +1,15 @@
+package msc;
+
+/* Thrown when a measure is not defined for a pair of classes: the classes
+ * have no common subsumer, a root is not an ancestor of their LCS, or a
+ * class is not part of the ontology it is looked up in. It extends
+ * IllegalArgumentException, which these cases threw before.
+ */
+public class UndefinedSimilarityException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UndefinedSimilarityException(String message) {
+		super(message);
+	}
+}
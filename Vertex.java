@@ -1,8 +1,8 @@
 package msc;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.PriorityQueue;
 
 public class Vertex implements Comparable<Vertex> {
 
@@ -127,15 +127,21 @@ public class Vertex implements Comparable<Vertex> {
 
 		public void computeShortestPaths(Vertex sourceVertex){
 
+			// vertexes get an id in the heap when they are first reached by this search
+			HashMap<Vertex, Integer> ids = new HashMap<>();
+			List<Vertex> vertexes = new ArrayList<>();
+			IndexedMinHeap priorityQueue = new IndexedMinHeap(16);
+
 			sourceVertex.setDistance(0);
-			PriorityQueue<Vertex> priorityQueue = new PriorityQueue<>();
-			priorityQueue.add(sourceVertex);
 			sourceVertex.setVisited(true);
 			sourceVertex.setPredecessor(null);
+			ids.put(sourceVertex, 0);
+			vertexes.add(sourceVertex);
+			priorityQueue.insert(0, 0);
 
 			while( !priorityQueue.isEmpty() ){ 
 				// Getting the minimum distance vertex from priority queue
-				Vertex actualVertex = priorityQueue.poll();
+				Vertex actualVertex = vertexes.get(priorityQueue.poll());
 
 				for(Edge edge : actualVertex.getAdjacenciesList()){
 
@@ -143,10 +149,18 @@ public class Vertex implements Comparable<Vertex> {
 					if( v != null && !v.isVisited() )
 					{						
 						float newDistance = actualVertex.getDistance() + edge.getWeight();
-						priorityQueue.remove(v);
+						Integer id = ids.get(v);
+						if (id == null) {
+							id = vertexes.size();
+							ids.put(v, id);
+							vertexes.add(v);
+							priorityQueue.ensureCapacity(id + 1);
+						}
+						else if (newDistance >= v.getDistance())
+							continue;
 						v.setDistance(newDistance);
 						v.setPredecessor(actualVertex);
-						priorityQueue.add(v);
+						priorityQueue.insertOrDecrease(id, newDistance);
 					}
 				}
 				actualVertex.setVisited(true);
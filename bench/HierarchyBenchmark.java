@@ -0,0 +1,106 @@
+package msc;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/* Construction of the necessity graph and distances of one ontology, and
+ * the pairwise measures on random class pairs of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HierarchyBenchmark {
+
+	private static final int PAIRS = 1024;
+
+	@Param({ "CHAIN", "FAN_OUT", "MULTIPLE" })
+	public SyntheticOntology.Shape shape;
+
+	@Param({ "1000", "10000" })
+	public int size;
+
+	@Param({ "8" })
+	public int degree;
+
+	@Param({ "42" })
+	public long seed;
+
+	private OWLOntology ontology;
+	private HierarchyGraph graph;
+	private AncestorDistances ancestors;
+	private OntologyIndex index;
+	private final OWLClass[] classes1 = new OWLClass[PAIRS], classes2 = new OWLClass[PAIRS];
+	private int next;
+
+	@Setup
+	public void setUp() throws OWLOntologyCreationException {
+		ontology = SyntheticOntology.generate(shape, size, degree, seed);
+		graph = App.setEdges(ontology);
+		ancestors = AncestorDistances.compute(graph);
+		index = new OntologyIndex(ontology);
+
+		Random random = new Random(seed);
+		List<OWLClass> classes = index.getClasses();
+		for (int i = 0; i < PAIRS; i++) {
+			classes1[i] = classes.get(random.nextInt(classes.size()));
+			classes2[i] = classes.get(random.nextInt(classes.size()));
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public HierarchyGraph setEdges() {
+		return App.setEdges(ontology);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public AncestorDistances ancestorDistances() {
+		return AncestorDistances.compute(graph);
+	}
+
+	// Distances materialized as the map of (class, ancestor) keys
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public HashMap<KeyShortestPaths, ShortestPaths> getAllDistances() {
+		return App.getAllDistances(graph, ancestors);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public OntologyIndex ontologyIndex() {
+		return new OntologyIndex(ontology);
+	}
+
+	@Benchmark
+	public OWLClass getLCS() {
+		int i = next++ & (PAIRS - 1);
+		return App.getLCS(index, index, classes1[i], classes2[i]);
+	}
+
+	@Benchmark
+	public Float simNec() {
+		int i = next++ & (PAIRS - 1);
+		return App.simNec(index, index, classes1[i], classes2[i]);
+	}
+}
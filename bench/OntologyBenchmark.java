@@ -0,0 +1,75 @@
+package msc;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/* Measures over all the classes of ontologies (weightNec, simNecOnto),
+ * quadratic in the number of classes so run on smaller sizes. The two
+ * ontologies have the same classes and hierarchies drawn from two seeds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class OntologyBenchmark {
+
+	@Param({ "CHAIN", "FAN_OUT", "MULTIPLE" })
+	public SyntheticOntology.Shape shape;
+
+	@Param({ "100", "300", "1000" })
+	public int size;
+
+	@Param({ "8" })
+	public int degree;
+
+	@Param({ "42" })
+	public long seed;
+
+	private OWLOntology ontology1, ontology2;
+	private OntologyIndex index1, index2;
+	private List<OWLClass> classes;
+	private int next;
+
+	@Setup
+	public void setUp() throws OWLOntologyCreationException {
+		ontology1 = SyntheticOntology.generate(shape, size, degree, seed);
+		ontology2 = SyntheticOntology.generate(shape, size, degree, seed + 1);
+		index1 = new OntologyIndex(ontology1);
+		index2 = new OntologyIndex(ontology2);
+		classes = index1.getClasses();
+	}
+
+	@Benchmark
+	public Float weightNec() {
+		return App.weightNec(index1, classes.get(next++ % classes.size()));
+	}
+
+	// Whole comparison from the ontologies, indexes and weight vectors included
+	@Benchmark
+	public double simNecOnto() {
+		return App.simNecOnto(ontology1, ontology2);
+	}
+
+	// Comparison of compiled indexes, whose weight vectors are computed once
+	@Benchmark
+	public double simNecOntoIndexed() {
+		return App.simNecOnto(index1, index2);
+	}
+}
@@ -0,0 +1,68 @@
+package msc;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/* Generator of labelled class hierarchies of a given shape and size.
+ * Classes are named C0..C(size-1) and labelled "class i" whatever the
+ * seed, so two ontologies generated with different seeds share their
+ * classes and differ only by their SubClassOf axioms. C0 is the root.
+ */
+public class SyntheticOntology {
+
+	public static final String NAMESPACE = "http://msc.bench/synthetic";
+
+	public enum Shape {
+		// degree chains hanging from the root, each about size / degree classes deep: no sharing
+		CHAIN,
+		// tree where each class has degree subclasses: shallow and wide
+		FAN_OUT,
+		// each class has up to degree superclasses taken among the previous classes
+		MULTIPLE
+	}
+
+	public static OWLOntology generate(Shape shape, int size, int degree, long seed) throws OWLOntologyCreationException {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		OWLOntology o = manager.createOntology(IRI.create(NAMESPACE + "/" + shape.name().toLowerCase() + "-" + size + "-" + seed));
+		Random random = new Random(seed);
+
+		Set<OWLAxiom> axioms = new HashSet<>();
+		OWLClass[] classes = new OWLClass[size];
+		for (int i = 0; i < size; i++) {
+			classes[i] = df.getOWLClass(IRI.create(NAMESPACE + "#C" + i));
+			axioms.add(df.getOWLDeclarationAxiom(classes[i]));
+			axioms.add(df.getOWLAnnotationAssertionAxiom(classes[i].getIRI(),
+					df.getOWLAnnotation(df.getRDFSLabel(), df.getOWLLiteral("class " + i))));
+		}
+
+		for (int i = 1; i < size; i++)
+			switch (shape) {
+			case CHAIN:
+				// class i continues chain (i - 1) % degree below the class degree places before it
+				axioms.add(df.getOWLSubClassOfAxiom(classes[i], classes[i > degree ? i - degree : 0]));
+				break;
+			case FAN_OUT:
+				axioms.add(df.getOWLSubClassOfAxiom(classes[i], classes[(i - 1) / degree]));
+				break;
+			case MULTIPLE:
+				int parents = 1 + random.nextInt(Math.min(degree, i));
+				for (int k = 0; k < parents; k++)
+					axioms.add(df.getOWLSubClassOfAxiom(classes[i], classes[random.nextInt(i)]));
+				break;
+			}
+
+		manager.addAxioms(o, axioms);
+		return o;
+	}
+}
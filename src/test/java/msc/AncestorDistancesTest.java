@@ -0,0 +1,233 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/* Rows of AncestorDistances against a Dijkstra search from every class */
+class AncestorDistancesTest {
+
+	@Test
+	void dagRowsMatchDijkstra() {
+		for (int seed = 0; seed < 10; seed++) {
+			HierarchyGraph graph = TestOntologies.randomDag(50 + 30 * seed, seed);
+			assertMatchesDijkstra(graph, AncestorDistances.compute(graph));
+		}
+	}
+
+	@Test
+	void cyclicGraphRowsMatchDijkstra() {
+		for (int seed = 0; seed < 10; seed++) {
+			HierarchyGraph graph = TestOntologies.randomGraph(60 + 20 * seed, 150 + 50 * seed, seed);
+			// rows are then computed by one Dijkstra per class instead of dynamic programming
+			assertNull(AncestorDistances.topologicalOrder(graph), "graph " + seed + " has no cycle");
+			assertMatchesDijkstra(graph, AncestorDistances.compute(graph));
+		}
+	}
+
+	@Test
+	void cyclicOntologyDistancesMatchDijkstra() throws Exception {
+		// some classes of a random ontology also go below one of the classes after them
+		OWLOntology o = TestOntologies.randomOntology(150, 5);
+		OWLOntologyManager manager = o.getOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		Random random = new Random(5);
+		for (int k = 0; k < 20; k++) {
+			int subclass = random.nextInt(75);
+			manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, subclass),
+					TestOntologies.getClass(df, subclass + 1 + random.nextInt(149 - subclass))));
+		}
+
+		OntologyIndex index = new OntologyIndex(o);
+		HierarchyGraph graph = index.getGraph();
+		assertNull(AncestorDistances.topologicalOrder(graph));
+		assertMatchesDijkstra(graph, index.getAncestorDistances());
+		// the indexes without rows have the same ids and distances
+		OntologyIndex onDemand = OntologyIndex.onDemand(o), labelled = OntologyIndex.withHubLabels(o);
+		for (int source = 0; source < graph.size(); source++)
+			for (int target = 0; target < graph.size(); target++)
+				if (target != source) {
+					assertEquals(index.getDistance(source, target), onDemand.getDistance(source, target), source + " -> " + target);
+					assertEquals(index.getDistance(source, target), labelled.getDistance(source, target), source + " -> " + target);
+				}
+	}
+
+	@Test
+	void parallelRowsEqualSequentialRows() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int seed = 0; seed < 5; seed++) {
+				HierarchyGraph graph = TestOntologies.randomDag(2000, seed);
+				AncestorDistances sequential = AncestorDistances.compute(graph), parallel = AncestorDistances.compute(graph, pool);
+				assertEquals(sequential.getPairsNumber(), parallel.getPairsNumber());
+				for (int v = 0; v < graph.size(); v++)
+					assertEquals(sequential.getRowStart(v), parallel.getRowStart(v));
+				for (int entry = 0; entry < sequential.getPairsNumber(); entry++) {
+					assertEquals(sequential.getAncestor(entry), parallel.getAncestor(entry));
+					assertEquals(sequential.getDistance(entry), parallel.getDistance(entry));
+					assertEquals(sequential.getHop(entry), parallel.getHop(entry));
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void updatedRowsMatchComputedRows() {
+		Random random = new Random(5);
+		List<int[]> parents = new ArrayList<>();
+		List<float[]> weights = new ArrayList<>();
+		for (int v = 0; v < 400; v++)
+			addParents(parents, weights, v, random);
+		HierarchyGraph graph = graph(parents, weights);
+		AncestorDistances distances = AncestorDistances.compute(graph);
+
+		for (int change = 0; change < 300; change++) {
+			// the edges of a class are drawn again, or a class is appended
+			int v = random.nextInt(5) == 0 ? parents.size() : 1 + random.nextInt(random.nextBoolean() ? 20 : parents.size() - 1);
+			List<int[]> before = new ArrayList<>(parents);
+			List<float[]> beforeWeights = new ArrayList<>(weights);
+			if (v == parents.size())
+				addParents(parents, weights, v, random);
+			else
+				setParents(parents, weights, v, random);
+			graph = graph(parents, weights);
+			AncestorDistances updated = AncestorDistances.update(graph, AncestorDistances.topologicalOrder(graph), distances, descendants(graph, v));
+			assertSameRows(AncestorDistances.compute(graph), updated, "change " + change);
+			// find searches the patched rows apart from the stored ones
+			assertMatchesDijkstra(graph, updated);
+
+			if (change % 10 == 0) {
+				// another update of the same rows copies the appended entries instead of overwriting those of the first
+				int w = 1 + random.nextInt(before.size() - 1);
+				setParents(before, beforeWeights, w, random);
+				HierarchyGraph other = graph(before, beforeWeights);
+				AncestorDistances sibling = AncestorDistances.update(other, AncestorDistances.topologicalOrder(other), distances, descendants(other, w));
+				assertSameRows(AncestorDistances.compute(other), sibling, "sibling of change " + change);
+				assertSameRows(AncestorDistances.compute(graph), updated, "change " + change + " after its sibling");
+			}
+			distances = updated;
+		}
+		AncestorDistances compact = distances.compact();
+		assertSameRows(distances, compact, "compacted rows");
+		assertEquals(compact.getPairsNumber(), compact.getRowEnd(graph.size() - 1));
+	}
+
+	// Class v gets 1 to 3 parents among the classes before it
+	private static void addParents(List<int[]> parents, List<float[]> weights, int v, Random random) {
+		parents.add(null);
+		weights.add(null);
+		setParents(parents, weights, v, random);
+	}
+
+	private static void setParents(List<int[]> parents, List<float[]> weights, int v, Random random) {
+		int count = v == 0 ? 0 : 1 + random.nextInt(3);
+		int[] up = new int[count];
+		float[] upWeights = new float[count];
+		for (int k = 0; k < count; k++) {
+			up[k] = random.nextInt(v);
+			upWeights[k] = 1 + random.nextInt(4);
+		}
+		parents.set(v, up);
+		weights.set(v, upWeights);
+	}
+
+	private static HierarchyGraph graph(List<int[]> parents, List<float[]> weights) {
+		int n = parents.size(), m = 0;
+		for (int[] up : parents)
+			m += up.length;
+		int[] sources = new int[m], targets = new int[m];
+		float[] edgeWeights = new float[m];
+		String[] names = new String[n];
+		for (int v = 0, e = 0; v < n; v++) {
+			names[v] = "C" + v;
+			for (int k = 0; k < parents.get(v).length; k++, e++) {
+				sources[e] = v;
+				targets[e] = parents.get(v)[k];
+				edgeWeights[e] = weights.get(v)[k];
+			}
+		}
+		return HierarchyGraph.fromEdges(names, sources, targets, edgeWeights, m);
+	}
+
+	// v and the classes below it, whose rows change with the edges of v
+	private static boolean[] descendants(HierarchyGraph graph, int v) {
+		HierarchyGraph children = graph.reverse();
+		boolean[] below = new boolean[graph.size()];
+		int[] queue = new int[graph.size()];
+		int head = 0, tail = 0;
+		below[v] = true;
+		queue[tail++] = v;
+		while (head < tail) {
+			int w = queue[head++];
+			for (int e = children.getEdgesStart(w); e < children.getEdgesEnd(w); e++)
+				if (!below[children.getTarget(e)]) {
+					below[children.getTarget(e)] = true;
+					queue[tail++] = children.getTarget(e);
+				}
+		}
+		return below;
+	}
+
+	static void assertSameRows(AncestorDistances expected, AncestorDistances actual, String context) {
+		assertEquals(expected.size(), actual.size(), context);
+		assertEquals(expected.getPairsNumber(), actual.getPairsNumber(), context);
+		for (int v = 0; v < expected.size(); v++) {
+			int start = expected.getRowStart(v), actualStart = actual.getRowStart(v);
+			assertEquals(expected.getRowEnd(v) - start, actual.getRowEnd(v) - actualStart, context + " row " + v);
+			for (int k = 0; k < expected.getRowEnd(v) - start; k++) {
+				assertEquals(expected.getAncestor(start + k), actual.getAncestor(actualStart + k), context + " row " + v);
+				assertEquals(expected.getDistance(start + k), actual.getDistance(actualStart + k), context + " row " + v);
+				assertEquals(expected.getHop(start + k), actual.getHop(actualStart + k), context + " row " + v);
+			}
+		}
+	}
+
+	private static void assertMatchesDijkstra(HierarchyGraph graph, AncestorDistances distances) {
+		HierarchyGraph.DijkstraShortestPath dijkstra = new HierarchyGraph.DijkstraShortestPath(graph);
+		for (int source = 0; source < graph.size(); source++)
+			try (HierarchyGraph.SearchState search = dijkstra.computeShortestPaths(source)) {
+				for (int target = 0; target < graph.size(); target++) {
+					if (target == source)
+						continue;
+					int entry = distances.find(source, target);
+					if (!search.isReached(target)) {
+						assertEquals(-1, entry, source + " -> " + target);
+						continue;
+					}
+					assertTrue(entry >= 0, source + " -> " + target);
+					assertEquals(search.getDistance(target), distances.getDistance(entry), source + " -> " + target);
+					assertEquals(search.getDistance(target), pathLength(graph, distances.getShortestPath(source, target)), source + " -> " + target);
+				}
+				for (int entry = distances.getRowStart(source) + 1; entry < distances.getRowEnd(source); entry++)
+					assertTrue(distances.getAncestor(entry - 1) < distances.getAncestor(entry), "row " + source + " not sorted");
+			}
+	}
+
+	// Sum of the lightest edges between consecutive classes of the path
+	private static float pathLength(HierarchyGraph graph, int[] path) {
+		float length = 0;
+		for (int k = 0; k + 1 < path.length; k++) {
+			float lightest = Float.POSITIVE_INFINITY;
+			for (int e = graph.getEdgesStart(path[k]); e < graph.getEdgesEnd(path[k]); e++)
+				if (graph.getTarget(e) == path[k + 1])
+					lightest = Math.min(lightest, graph.getWeight(e));
+			assertFalse(Float.isInfinite(lightest), "no edge " + path[k] + " -> " + path[k + 1]);
+			length += lightest;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,105 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/* LCS and simNec of classes of two small ontologies */
+class AppTest {
+
+	@Test
+	void classesOfBothOntologiesMeetAtTheirLcs() throws Exception {
+		OntologyIndex o1 = new OntologyIndex(ontology("B R", "C B")), o2 = new OntologyIndex(ontology("B R", "C B", "D B"));
+		// D is one edge below B, which is one edge below the root R: 2 / (1 + 1 + 2)
+		assertEquals(0.5f, App.simNec(o1, o2, cls("C"), cls("D")).floatValue());
+		// labels are aligned trimmed and in lower case, b and c match the classes of o2 labelled by their names
+		OntologyIndex labelled = new OntologyIndex(ontology("B R", "C B", "B =b", "C =c"));
+		assertEquals(0.5f, App.simNec(labelled, o2, cls("C"), cls("D")).floatValue());
+	}
+
+	@Test
+	void lcsIsSuperclassOfBothClasses() throws Exception {
+		// in o2 the label of B is first carried by A, which is not a superclass of C
+		OWLOntology first = ontology("B R", "C B", "B =shared"), second = ontology("A R", "B R", "C B", "D B", "A =shared", "B =shared");
+		OntologyIndex o1 = new OntologyIndex(first), o2 = new OntologyIndex(second);
+		OWLClass b = cls("B"), c = cls("C"), d = cls("D");
+
+		assertEquals(b, App.getLCS(o1, o2, c, c));
+		assertEquals(b, App.getLCS(o1, o2, c, d));
+		assertEquals(cls("R"), App.getLCS(o1, o2, c, cls("A")));
+		// D is one edge below B, which is one edge below the root R: 2 / (1 + 1 + 2)
+		assertEquals(0.5f, App.simNec(o1, o2, c, d).floatValue());
+		assertEquals(0.5f, App.simNec(OntologyIndex.onDemand(first), OntologyIndex.withHubLabels(second), c, d).floatValue());
+	}
+
+	@Test
+	void classesWithoutCommonSuperclassHaveNoLcs() throws Exception {
+		OntologyIndex o = new OntologyIndex(ontology("B R", "C B", "Y X", "Z Y"));
+		assertNull(App.getLCS(o, o, cls("C"), cls("Z")));
+		// a class is not one of its own superclasses
+		assertEquals(cls("R"), App.getLCS(o, o, cls("C"), cls("B")));
+	}
+
+	@Test
+	void rootsAreFoundOnLargeAndCyclicHierarchies() throws Exception {
+		// every class of the random ontology is below C0, through 1 to 3 superclasses each
+		OWLOntology random = TestOntologies.randomOntology(5000, 2);
+		assertEquals(Set.of(TestOntologies.getClass(OWLManager.getOWLDataFactory(), 0)), App.getRootClasses(random, App.setEdges(random)));
+
+		// A and B are below each other, the chain from C goes up to one of them
+		OWLOntology cyclic = ontology("A B", "B A", "C A", "E D");
+		Set<OWLClass> roots = App.getRootClasses(cyclic, App.setEdges(cyclic));
+		assertEquals(2, roots.size());
+		assertTrue(roots.contains(cls("D")));
+		assertTrue(roots.contains(cls("A")) || roots.contains(cls("B")));
+	}
+
+	@Test
+	void singlePairsShareAnIndexUntilTheOntologyChanges() throws Exception {
+		OWLOntology o = ontology("B R", "C B", "D B");
+		OntologyIndex index = App.getOnDemandIndex(o);
+		assertEquals(0.5f, App.simNec(o, o, cls("C"), cls("D")).floatValue());
+		assertSame(index, App.getOnDemandIndex(o));
+
+		// D moves below C, their LCS is now C, one edge below B
+		OWLOntologyManager manager = o.getOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		manager.removeAxiom(o, df.getOWLSubClassOfAxiom(cls("D"), cls("B")));
+		manager.addAxiom(o, df.getOWLSubClassOfAxiom(cls("D"), cls("C")));
+		assertNotSame(index, App.getOnDemandIndex(o));
+		assertEquals(App.simNec(new OntologyIndex(o), new OntologyIndex(o), cls("C"), cls("D")), App.simNec(o, o, cls("C"), cls("D")));
+		assertSame(App.getOnDemandIndex(o), App.getOnDemandIndex(o));
+	}
+
+	private static OWLClass cls(String name) {
+		return OWLManager.getOWLDataFactory().getOWLClass(IRI.create(TestOntologies.NAMESPACE + "#" + name));
+	}
+
+	// Ontology of "subclass superclass" axioms and "class =label" labels, added in the given order
+	private static OWLOntology ontology(String... axioms) throws OWLOntologyCreationException {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		OWLOntology o = manager.createOntology();
+		for (String axiom : axioms) {
+			String[] words = axiom.split(" ");
+			if (words[1].startsWith("="))
+				manager.addAxiom(o, TestOntologies.label(df, cls(words[0]), words[1].substring(1)));
+			else
+				manager.addAxiom(o, df.getOWLSubClassOfAxiom(cls(words[0]), cls(words[1])));
+		}
+		return o;
+	}
+}
@@ -0,0 +1,58 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* ClassBitmap against BitSet, on sets mixing sparse chunks (sorted arrays)
+ * and dense chunks (bitmaps) */
+class ClassBitmapTest {
+
+	@Test
+	void operationsMatchBitSet() {
+		Random random = new Random(5);
+		for (int round = 0; round < 200; round++) {
+			BitSet a = randomSet(random), b = randomSet(random);
+			ClassBitmap x = ClassBitmap.of(a.stream().toArray()), y = ClassBitmap.of(b.stream().toArray());
+
+			assertEquals(a.cardinality(), x.cardinality());
+			assertArrayEquals(a.stream().toArray(), x.toArray());
+			for (int k = 0; k < 1000; k++) {
+				int id = random.nextInt(1 << 18);
+				assertEquals(a.get(id), x.contains(id), "id " + id);
+			}
+
+			BitSet both = (BitSet) a.clone();
+			both.and(b);
+			ClassBitmap and = x.and(y);
+			assertArrayEquals(both.stream().toArray(), and.toArray());
+			assertEquals(both.cardinality(), and.cardinality());
+			assertArrayEquals(both.stream().toArray(), y.and(x).toArray());
+			assertEquals(a.intersects(b), x.intersects(y));
+		}
+	}
+
+	@Test
+	void rangeOfIds() {
+		int[] ids = { 1, 5, 70000, 70001, 200000 };
+		assertArrayEquals(new int[] { 5, 70000, 70001 }, ClassBitmap.of(ids, 1, 4).toArray());
+		assertSame(ClassBitmap.EMPTY, ClassBitmap.of(ids, 2, 2));
+		assertEquals(0, ClassBitmap.EMPTY.and(ClassBitmap.of(ids)).cardinality());
+	}
+
+	// Ids below 2^18 in 4 chunks, each one empty, sparse or dense
+	private static BitSet randomSet(Random random) {
+		BitSet set = new BitSet();
+		for (int chunk = 0; chunk < 4; chunk++) {
+			int kind = random.nextInt(3), count = kind == 0 ? 0 : kind == 1 ? random.nextInt(4096) : 4097 + random.nextInt(60000);
+			for (int k = 0; k < count; k++)
+				set.set((chunk << 16) | random.nextInt(1 << 16));
+		}
+		return set;
+	}
+}
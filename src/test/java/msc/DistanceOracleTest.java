@@ -0,0 +1,64 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/* DistanceOracle against the rows of AncestorDistances, with a cache of
+ * rows much smaller than the graph */
+class DistanceOracleTest {
+
+	@Test
+	void searchesMatchAncestorRows() {
+		for (int seed = 0; seed < 4; seed++) {
+			HierarchyGraph graph = TestOntologies.randomDag(400, seed);
+			AncestorDistances rows = AncestorDistances.compute(graph);
+			HierarchyGraph reverse = graph.reverse();
+			DistanceOracle searched = new DistanceOracle(graph, reverse, null, 32);
+			DistanceOracle labelled = new DistanceOracle(graph, reverse, HubLabels.compute(graph, reverse), 32);
+
+			for (int source = 0; source < graph.size(); source++) {
+				int[] ancestors = new int[rows.getRowEnd(source) - rows.getRowStart(source)];
+				for (int k = 0; k < ancestors.length; k++)
+					ancestors[k] = rows.getAncestor(rows.getRowStart(source) + k);
+				for (DistanceOracle oracle : Arrays.asList(searched, labelled)) {
+					// distance searched before the row of source is kept
+					if (ancestors.length > 0)
+						assertEquals(rows.getDistance(rows.getRowStart(source)), oracle.getDistance(source, ancestors[0]), "source " + source);
+					assertArrayEquals(ancestors, oracle.getAncestors(source));
+					assertArrayEquals(ancestors, oracle.getSuperClasses(source).toArray());
+					for (int target = 0; target < graph.size(); target += 7) {
+						int entry = rows.find(source, target);
+						float distance = oracle.getDistance(source, target);
+						if (entry == -1)
+							assertTrue(Float.isNaN(distance), source + " -> " + target);
+						else
+							assertEquals(rows.getDistance(entry), distance, source + " -> " + target);
+					}
+				}
+			}
+			assertTrue(searched.getRowsNumber() <= 32);
+			assertTrue(labelled.getRowsNumber() <= 32);
+		}
+	}
+
+	@Test
+	void missingClassesHaveNoDistance() throws Exception {
+		HierarchyGraph graph = TestOntologies.randomDag(50, 1);
+		HierarchyGraph reverse = graph.reverse();
+		for (DistanceOracle oracle : Arrays.asList(new DistanceOracle(graph), new DistanceOracle(graph, reverse, HubLabels.compute(graph, reverse)))) {
+			assertTrue(Float.isNaN(oracle.getDistance(-1, 0)));
+			assertTrue(Float.isNaN(oracle.getDistance(10, -1)));
+		}
+
+		// a class missing from the graph, as owl:Thing, has id -1 in every kind of index
+		OWLOntology o = TestOntologies.randomOntology(50, 1);
+		for (OntologyIndex index : Arrays.asList(new OntologyIndex(o), OntologyIndex.onDemand(o), OntologyIndex.withHubLabels(o)))
+			assertTrue(Float.isNaN(index.getDistance(10, -1)));
+	}
+}
@@ -0,0 +1,63 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+/* AncestorDistances written to a DistanceStore then mapped back */
+class DistanceStoreTest {
+
+	@Test
+	void mappedRowsEqualComputedRows() throws Exception {
+		HierarchyGraph graph = TestOntologies.randomDag(300, 2);
+		AncestorDistances distances = AncestorDistances.compute(graph);
+		Path file = Files.createTempFile("msc", ".mscd");
+		try {
+			DistanceStore.write(distances, graph.fingerprint(), file);
+			assertNull(DistanceStore.open(file, graph.fingerprint() + 1));
+
+			// segments of 16 values, so that rows and the offsets cross them
+			AncestorDistances mapped = DistanceStore.open(file, graph.fingerprint(), 4);
+			assertTrue(mapped.isMapped());
+			AncestorDistancesTest.assertSameRows(distances, mapped, "mapped rows");
+			for (int source = 0; source < graph.size(); source++)
+				for (int target = 0; target < graph.size(); target++) {
+					int entry = distances.find(source, target), mappedEntry = mapped.find(source, target);
+					assertEquals(entry == -1, mappedEntry == -1, source + " " + target);
+					if (entry != -1)
+						assertEquals(distances.getDistance(entry), mapped.getDistance(mappedEntry), source + " " + target);
+				}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void indexReadsDistancesFromTheMappedRows() throws Exception {
+		HierarchySnapshot hierarchy = HierarchySnapshot.of(TestOntologies.randomOntology(300, 4));
+		Path file = Files.createTempFile("msc", ".mscd");
+		Files.delete(file);
+		try {
+			// the first index computes and stores the rows, the second one maps them
+			OntologyIndex computed = new OntologyIndex(hierarchy, null, file);
+			assertFalse(computed.getAncestorDistances().isMapped());
+			OntologyIndex mapped = new OntologyIndex(hierarchy, null, file);
+			assertTrue(mapped.getAncestorDistances().isMapped());
+
+			int n = hierarchy.getGraph().size();
+			for (int source = -1; source < n; source++)
+				for (int target = -1; target < n; target++)
+					assertEquals(computed.getDistance(source, target), mapped.getDistance(source, target), source + " " + target);
+		}
+		finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/* HierarchySnapshot written then read back, and files it must refuse */
+class HierarchySnapshotTest {
+
+	// Bytes before the edge offsets: magic, version and the five counts
+	private static final int HEADER = 28;
+
+	@Test
+	void readGivesBackWrittenHierarchy() throws Exception {
+		OWLOntology o = TestOntologies.randomOntology(500, 3);
+		HierarchySnapshot snapshot = HierarchySnapshot.of(o);
+		Path file = Files.createTempFile("msc", ".msch");
+		try {
+			snapshot.write(file);
+			assertTrue(HierarchySnapshot.isSnapshot(file));
+			HierarchySnapshot read = HierarchySnapshot.read(file);
+
+			assertEquals(snapshot.getClasses(), read.getClasses());
+			assertEquals(snapshot.getRoots(), read.getRoots());
+			assertArrayEquals(snapshot.getLabels(), read.getLabels());
+			HierarchyGraph graph = snapshot.getGraph(), readGraph = read.getGraph();
+			assertEquals(graph.size(), readGraph.size());
+			assertEquals(graph.getEdgesNumber(), readGraph.getEdgesNumber());
+			assertEquals(graph.fingerprint(), readGraph.fingerprint());
+			for (int id = 0; id < graph.size(); id++) {
+				assertEquals(graph.getName(id), readGraph.getName(id));
+				assertEquals(graph.getEdgesStart(id), readGraph.getEdgesStart(id));
+			}
+			for (int e = 0; e < graph.getEdgesNumber(); e++) {
+				assertEquals(graph.getTarget(e), readGraph.getTarget(e));
+				assertEquals(graph.getWeight(e), readGraph.getWeight(e));
+			}
+
+			OntologyIndex parsed = new OntologyIndex(o), loaded = new OntologyIndex(read, null);
+			for (OWLClass cls : parsed.getClasses()) {
+				assertEquals(parsed.getLabel(cls), loaded.getLabel(cls));
+				assertEquals(parsed.getSuperClasses(cls), loaded.getSuperClasses(cls));
+				for (OWLClass superclass : parsed.getSuperClasses(cls))
+					assertEquals(parsed.getDistance(cls, superclass), loaded.getDistance(cls, superclass));
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void ontologyDocumentIsNotSnapshot() throws Exception {
+		Path file = Files.createTempFile("msc", ".owl");
+		try {
+			Files.write(file, "<?xml version=\"1.0\"?>\n<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"/>\n".getBytes(StandardCharsets.UTF_8));
+			assertFalse(HierarchySnapshot.isSnapshot(file));
+			assertThrows(IOException.class, () -> HierarchySnapshot.read(file));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void corruptedSnapshotsAreRejected() throws Exception {
+		Path file = Files.createTempFile("msc", ".msch");
+		try {
+			HierarchySnapshot.of(TestOntologies.randomOntology(100, 4)).write(file);
+			byte[] bytes = Files.readAllBytes(file);
+			ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			int n = header.getInt(12);
+
+			assertRejected(file, Arrays.copyOf(bytes, bytes.length - 1));
+			assertRejected(file, Arrays.copyOf(bytes, HEADER - 1));
+			assertRejected(file, with(bytes, 0, 0));
+			assertRejected(file, with(bytes, 4, 99));
+			// last edge offset beyond the edges, then first edge target beyond the classes
+			assertRejected(file, with(bytes, HEADER + 4 * n, header.getInt(16) + 1));
+			assertRejected(file, with(bytes, HEADER + 4 * (n + 1), n));
+			// a negative count, with the text length making up for it in the file size
+			int c = header.getInt(8), t = header.getInt(24);
+			assertRejected(file, with(with(bytes, 8, -1), 24, t + 4 * (c + 1)));
+			for (int offset = 8; offset < HEADER; offset += 4)
+				assertRejected(file, with(bytes, offset, -1));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	private static byte[] with(byte[] bytes, int offset, int value) {
+		byte[] copy = bytes.clone();
+		ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		return copy;
+	}
+
+	private static void assertRejected(Path file, byte[] bytes) throws IOException {
+		Files.write(file, bytes);
+		assertThrows(IOException.class, () -> HierarchySnapshot.read(file));
+	}
+}
@@ -0,0 +1,40 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/* Distances of HubLabels against a Dijkstra search from every class */
+class HubLabelsTest {
+
+	@Test
+	void labelsMatchDijkstra() {
+		for (int seed = 0; seed < 8; seed++)
+			assertMatchesDijkstra(TestOntologies.randomDag(40 + 60 * seed, seed));
+	}
+
+	@Test
+	void labelsMatchDijkstraWithCycles() {
+		for (int seed = 0; seed < 4; seed++)
+			assertMatchesDijkstra(TestOntologies.randomGraph(100, 250, seed));
+	}
+
+	private static void assertMatchesDijkstra(HierarchyGraph graph) {
+		HubLabels labels = HubLabels.compute(graph);
+		assertEquals(graph.size(), labels.size());
+		HierarchyGraph.DijkstraShortestPath dijkstra = new HierarchyGraph.DijkstraShortestPath(graph);
+		for (int source = 0; source < graph.size(); source++)
+			try (HierarchyGraph.SearchState search = dijkstra.computeShortestPaths(source)) {
+				for (int target = 0; target < graph.size(); target++) {
+					if (target == source)
+						continue;
+					float distance = labels.getDistance(source, target);
+					if (search.isReached(target))
+						assertEquals(search.getDistance(target), distance, source + " -> " + target);
+					else
+						assertTrue(Float.isNaN(distance), source + " -> " + target + " " + distance);
+				}
+			}
+	}
+}
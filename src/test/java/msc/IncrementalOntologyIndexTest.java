@@ -0,0 +1,144 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+
+/* Index kept up to date by IncrementalOntologyIndex against the index
+ * compiled again from the edited ontology after every change. Ids of the
+ * two indexes differ, classes are compared by name.
+ */
+class IncrementalOntologyIndexTest {
+
+	@Test
+	void updatesMatchFullRebuild() throws Exception {
+		Random random = new Random(11);
+		for (int round = 0; round < 4; round++) {
+			int n = 60 + 40 * round;
+			OWLOntology o = TestOntologies.randomOntology(n, round);
+			OWLOntologyManager manager = o.getOWLOntologyManager();
+			OWLDataFactory df = manager.getOWLDataFactory();
+			IncrementalOntologyIndex incremental = IncrementalOntologyIndex.attach(o);
+			try {
+				for (int change = 0; change < 100; change++) {
+					int kind = random.nextInt(10);
+					if (kind < 4) {
+						// edges go from a class to one before it, so that the hierarchy stays a DAG
+						int subclass = 1 + random.nextInt(n - 1);
+						manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, subclass),
+								TestOntologies.getClass(df, random.nextInt(subclass))));
+					}
+					else if (kind < 6)
+						manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, n++),
+								TestOntologies.getClass(df, random.nextInt(n - 1))));
+					else if (kind < 9) {
+						// a class whose last axiom is removed leaves the ontology
+						List<OWLSubClassOfAxiom> axioms = new ArrayList<>();
+						for (OWLClass cls : o.getClassesInSignature())
+							axioms.addAll(o.getSubClassAxiomsForSubClass(cls));
+						if (!axioms.isEmpty())
+							manager.removeAxiom(o, axioms.get(random.nextInt(axioms.size())));
+					}
+					else
+						manager.addAxiom(o, TestOntologies.label(df, TestOntologies.getClass(df, random.nextInt(n)), "label " + change));
+
+					assertEquivalent(new OntologyIndex(o), incremental.getIndex(), "round " + round + " change " + change);
+				}
+			}
+			finally {
+				incremental.detach();
+			}
+		}
+	}
+
+	@Test
+	void longRunsOfUpdatesMatchFullRebuild() throws Exception {
+		// without removals no change rebuilds the index, the ancestor rows are only patched
+		Random random = new Random(12);
+		int n = 200;
+		OWLOntology o = TestOntologies.randomOntology(n, 7);
+		OWLOntologyManager manager = o.getOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		IncrementalOntologyIndex incremental = IncrementalOntologyIndex.attach(o);
+		try {
+			for (int change = 0; change < 300; change++) {
+				int subclass = random.nextInt(4) == 0 ? n++ : 1 + random.nextInt(Math.min(n - 1, random.nextBoolean() ? 10 : n - 1));
+				manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, subclass),
+						TestOntologies.getClass(df, random.nextInt(Math.min(subclass, n - 1)))));
+				if (change % 25 == 0) {
+					OntologyIndex expected = new OntologyIndex(o), actual = incremental.getIndex();
+					assertEquivalent(expected, actual, "change " + change);
+					assertEquals(expected.getAncestorDistances().getPairsNumber(), actual.getAncestorDistances().getPairsNumber());
+					assertEquals(expected.getDistances().size(), actual.getDistances().size());
+				}
+			}
+		}
+		finally {
+			incremental.detach();
+		}
+	}
+
+	@Test
+	void cyclesAreFollowedThroughRebuilds() throws Exception {
+		OWLOntology o = TestOntologies.randomOntology(80, 3);
+		OWLOntologyManager manager = o.getOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		IncrementalOntologyIndex incremental = IncrementalOntologyIndex.attach(o);
+		try {
+			// C0 goes below one of its descendants, the index is compiled again with the cycle
+			OWLSubClassOfAxiom cycle = df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, 0), TestOntologies.getClass(df, 79));
+			manager.addAxiom(o, cycle);
+			assertEquivalent(new OntologyIndex(o), incremental.getIndex(), "cycle added");
+			manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, 80), TestOntologies.getClass(df, 40)));
+			assertEquivalent(new OntologyIndex(o), incremental.getIndex(), "class added below the cycle");
+			manager.addAxiom(o, TestOntologies.label(df, TestOntologies.getClass(df, 40), "relabelled"));
+			assertEquivalent(new OntologyIndex(o), incremental.getIndex(), "class relabelled");
+
+			manager.removeAxiom(o, cycle);
+			assertEquivalent(new OntologyIndex(o), incremental.getIndex(), "cycle removed");
+			manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, 81), TestOntologies.getClass(df, 80)));
+			assertEquivalent(new OntologyIndex(o), incremental.getIndex(), "class added after the cycle");
+		}
+		finally {
+			incremental.detach();
+		}
+	}
+
+	@Test
+	void detachedIndexIsNotUpdated() throws Exception {
+		OWLOntology o = TestOntologies.randomOntology(30, 1);
+		OWLOntologyManager manager = o.getOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		IncrementalOntologyIndex incremental = IncrementalOntologyIndex.attach(o);
+		OntologyIndex before = incremental.getIndex();
+		incremental.detach();
+		manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, 30), TestOntologies.getClass(df, 0)));
+		assertSame(before, incremental.getIndex());
+	}
+
+	private static void assertEquivalent(OntologyIndex expected, OntologyIndex actual, String context) {
+		assertEquals(TestOntologies.names(expected.getClasses()), TestOntologies.names(actual.getClasses()), context);
+		assertEquals(TestOntologies.names(expected.getRoots()), TestOntologies.names(actual.getRoots()), context);
+		// the index is built from its hierarchy, whose labels are those of the index
+		assertSame(actual.getGraph(), actual.getHierarchy().getGraph(), context);
+		assertEquals(actual.getRoots(), actual.getHierarchy().getRoots(), context);
+		for (OWLClass cls : expected.getClasses()) {
+			OWLClass same = actual.getClass(actual.getId(cls));
+			assertEquals(expected.getLabel(cls), actual.getLabel(same), context + " " + cls);
+			assertEquals(actual.getLabel(same), actual.getHierarchy().getLabels()[actual.getId(same)], context + " " + cls);
+			assertEquals(TestOntologies.names(expected.getSuperClasses(cls)), TestOntologies.names(actual.getSuperClasses(same)), context + " " + cls);
+			for (OWLClass superclass : expected.getSuperClasses(cls))
+				assertEquals(expected.getDistance(cls, superclass), actual.getDistance(same, superclass), context + " " + cls + " " + superclass);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* IndexedMinHeap against a map of the queued ids, searched for its minimum */
+class IndexedMinHeapTest {
+
+	@Test
+	void randomOperationsMatchReference() {
+		Random random = new Random(1);
+		for (int round = 0; round < 20; round++) {
+			int capacity = 1 + random.nextInt(300);
+			IndexedMinHeap heap = new IndexedMinHeap(capacity);
+			Map<Integer, Double> queued = new HashMap<>();
+
+			for (int op = 0; op < 5000; op++) {
+				int id = random.nextInt(capacity);
+				double key = random.nextInt(1000) / 10.0;
+				switch (random.nextInt(4)) {
+				case 0:
+					if (!queued.containsKey(id)) {
+						heap.insert(id, key);
+						queued.put(id, key);
+					}
+					break;
+				case 1:
+					heap.insertOrDecrease(id, key);
+					queued.merge(id, key, Math::min);
+					break;
+				case 2:
+					if (queued.containsKey(id) && key < queued.get(id)) {
+						heap.decreaseKey(id, key);
+						queued.put(id, key);
+					}
+					break;
+				default:
+					if (!queued.isEmpty()) {
+						double min = Double.POSITIVE_INFINITY;
+						for (double k : queued.values())
+							min = Math.min(min, k);
+						assertEquals(min, heap.getKey(heap.peek()));
+						int polled = heap.poll();
+						assertEquals(min, queued.remove(polled).doubleValue(), "polled " + polled);
+						assertFalse(heap.contains(polled));
+					}
+				}
+				assertEquals(queued.size(), heap.size());
+				assertEquals(queued.containsKey(id), heap.contains(id));
+			}
+
+			heap.clear();
+			assertTrue(heap.isEmpty());
+			for (int id = 0; id < capacity; id++)
+				assertFalse(heap.contains(id));
+		}
+	}
+
+	@Test
+	void pollsInKeyOrderAfterGrowing() {
+		IndexedMinHeap heap = new IndexedMinHeap(4);
+		for (int id = 0; id < 1000; id++) {
+			heap.ensureCapacity(id + 1);
+			heap.insert(id, (id * 7919) % 1000);
+		}
+		for (int id = 0; id < 1000; id += 3)
+			heap.decreaseKey(id, heap.getKey(id) - 0.5);
+		double previous = Double.NEGATIVE_INFINITY;
+		while (!heap.isEmpty()) {
+			double key = heap.getKey(heap.peek());
+			assertTrue(previous <= key);
+			previous = key;
+			heap.poll();
+		}
+	}
+}
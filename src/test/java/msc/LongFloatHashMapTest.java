@@ -0,0 +1,80 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* LongFloatHashMap against a HashMap, with many removals so that the runs
+ * of linear probing are shifted back across the end of the table.
+ */
+class LongFloatHashMapTest {
+
+	@Test
+	void putGetRemoveMatchHashMap() {
+		Random random = new Random(3);
+		for (int round = 0; round < 20; round++) {
+			LongFloatHashMap map = new LongFloatHashMap(random.nextInt(50));
+			Map<Long, Float> reference = new HashMap<>();
+			List<Long> keys = new ArrayList<>();
+			// few distinct keys from a small range so that they collide and get removed again
+			int range = 1 + random.nextInt(200);
+			for (int i = 0; i < range; i++)
+				keys.add(LongFloatHashMap.key(random.nextInt(range), random.nextInt(range)));
+
+			for (int op = 0; op < 20000; op++) {
+				long key = keys.get(random.nextInt(keys.size()));
+				if (random.nextInt(3) == 0) {
+					map.remove(key);
+					reference.remove(key);
+				}
+				else {
+					float value = random.nextInt(100);
+					map.put(key, value);
+					reference.put(key, value);
+				}
+				assertEquals(reference.size(), map.size());
+			}
+			for (long key : keys) {
+				assertEquals(reference.containsKey(key), map.containsKey(key));
+				assertEquals(reference.getOrDefault(key, -1f).floatValue(), map.get(key, -1f));
+			}
+
+			LongFloatHashMap copy = new LongFloatHashMap(map);
+			for (long key : reference.keySet())
+				copy.remove(key);
+			assertEquals(0, copy.size());
+			assertEquals(reference.size(), map.size());
+		}
+	}
+
+	@Test
+	void removeKeepsCollidingKeys() {
+		LongFloatHashMap map = new LongFloatHashMap();
+		for (int i = 0; i < 10000; i++)
+			map.put(LongFloatHashMap.key(i, i + 1), i);
+		for (int i = 0; i < 10000; i += 2)
+			map.remove(LongFloatHashMap.key(i, i + 1));
+		for (int i = 0; i < 10000; i++)
+			assertEquals(i % 2 == 0 ? -1f : i, map.get(LongFloatHashMap.key(i, i + 1), -1f));
+		assertEquals(5000, map.size());
+	}
+
+	@Test
+	void freeKeyIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new LongFloatHashMap().put(Long.MIN_VALUE, 0));
+	}
+
+	@Test
+	void oversizedMapsAreRefused() {
+		// past 2^29 entries the doubled capacity overflows an int
+		assertThrows(IllegalArgumentException.class, () -> new LongFloatHashMap((1 << 29) + 1));
+		assertThrows(IllegalArgumentException.class, () -> new LongFloatHashMap(Integer.MAX_VALUE));
+	}
+}
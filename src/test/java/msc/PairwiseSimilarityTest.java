@@ -0,0 +1,97 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/* Batches of PairwiseSimilarity against App.simNec pair by pair */
+class PairwiseSimilarityTest {
+
+	@Test
+	void batchesMatchSinglePairs() throws Exception {
+		Random random = new Random(17);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (int round = 0; round < 3; round++) {
+				OntologyIndex o1 = new OntologyIndex(TestOntologies.randomOntology(150, round));
+				// the same ontology indexed apart, its classes being matched by label
+				OntologyIndex o2 = round == 0 ? o1 : OntologyIndex.withHubLabels(TestOntologies.randomOntology(150, round));
+				List<OWLClass> classes1 = o1.getClasses(), classes2 = o2.getClasses();
+
+				// pairs repeating a few first classes; those whose simNec is not defined are left out
+				List<OWLClass> first = new ArrayList<>(), second = new ArrayList<>();
+				List<Float> expected = new ArrayList<>();
+				while (first.size() < 2000) {
+					OWLClass c1 = classes1.get(random.nextInt(20)), c2 = classes2.get(random.nextInt(classes2.size()));
+					try {
+						Float value = App.getLCS(o1, o2, c1, c2) == null && !o1.getName(c1).equals(o2.getName(c2)) ? Float.NaN : App.simNec(o1, o2, c1, c2);
+						first.add(c1);
+						second.add(c2);
+						expected.add(value);
+					}
+					catch (IllegalArgumentException e) {
+					}
+				}
+
+				for (ForkJoinPool threads : new ForkJoinPool[] { null, pool }) {
+					float[] values = PairwiseSimilarity.simNec(o1, o2, first.toArray(new OWLClass[0]), second.toArray(new OWLClass[0]), threads);
+					for (int p = 0; p < values.length; p++)
+						assertEquals(expected.get(p).floatValue(), values[p], first.get(p) + " " + second.get(p));
+				}
+
+				// classes of a single ontology always have a simNec, defined or not
+				float[][] matrix = PairwiseSimilarity.simNec(o1, o1, classes1.subList(0, 20), classes1.subList(0, 20), pool);
+				for (int i = 0; i < 20; i++)
+					for (int j = 0; j < 20; j++) {
+						OWLClass c1 = classes1.get(i), c2 = classes1.get(j);
+						assertTrue(Float.isNaN(matrix[i][j]) == (i != j && App.getLCS(o1, o1, c1, c2) == null));
+						if (!Float.isNaN(matrix[i][j]))
+							assertEquals(App.simNec(o1, o1, c1, c2).floatValue(), matrix[i][j]);
+					}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void undefinedPairsDoNotSpoilTheBatch() throws Exception {
+		// C2 is below the root C0 only, so the LCS C2 of C3 and C5 has no distance to the root C1
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		OWLOntology o = manager.createOntology();
+		int[][] edges = { { 2, 0 }, { 3, 2 }, { 4, 1 }, { 5, 2 }, { 5, 1 } };
+		for (int[] edge : edges)
+			manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, edge[0]), TestOntologies.getClass(df, edge[1])));
+		OntologyIndex index = new OntologyIndex(o);
+		OWLClass c2 = TestOntologies.getClass(df, 2), c3 = TestOntologies.getClass(df, 3), c4 = TestOntologies.getClass(df, 4),
+				c5 = TestOntologies.getClass(df, 5);
+		assertThrows(UndefinedSimilarityException.class, () -> App.simNec(index, index, c3, c5));
+
+		OWLClass[] first = { c3, c3, c3, c5 }, second = { c2, c5, c4, c4 };
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			float[] scores = PairwiseSimilarity.simNec(index, index, first, second, pool);
+			assertEquals(App.simNec(index, index, c3, c2).floatValue(), scores[0]);
+			assertTrue(Float.isNaN(scores[1]));
+			assertTrue(Float.isNaN(scores[2]));
+			assertEquals(App.simNec(index, index, c5, c4).floatValue(), scores[3]);
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+/* Pairs read by SimilarityBatch, from pair lists and from its own CSV output */
+class SimilarityBatchTest {
+
+	@Test
+	void csvOutputIsReadBackAsPairs() throws Exception {
+		OntologyIndex o = new OntologyIndex(TestOntologies.randomOntology(60, 3));
+		// unknown names are written back as read, quoted when they hold a comma, a quote or a line break
+		String pairs = "C10\tC20\n# comment\nC5, C7\n C30 , C3 \nC8\tname, with comma\n\"say \"\"C1\"\"\",C2\nC4,\"two\nlines\"\n";
+		String csv = "class1,class2,simNec\n"
+				+ "C10,C20," + simNec(o, 10, 20) + "\n"
+				+ "C5,C7," + simNec(o, 5, 7) + "\n"
+				+ "C30,C3," + simNec(o, 30, 3) + "\n"
+				+ "C8,\"name, with comma\",\n"
+				+ "\"say \"\"C1\"\"\",C2,\n"
+				+ "C4,\"two\nlines\",\n";
+		assertEquals(csv, batch(o, pairs, 2));
+
+		// the output read as pairs gives the same output, whatever the chunks
+		assertEquals(csv, batch(o, csv, 1));
+		assertEquals(csv, batch(o, csv, 100));
+	}
+
+	private static float simNec(OntologyIndex o, int i, int j) {
+		OWLDataFactory df = OWLManager.getOWLDataFactory();
+		return App.simNec(o, o, TestOntologies.getClass(df, i), TestOntologies.getClass(df, j)).floatValue();
+	}
+
+	private static String batch(OntologyIndex o, String pairs, int chunk) throws Exception {
+		StringWriter out = new StringWriter();
+		SimilarityBatch.run(o, o, new BufferedReader(new StringReader(pairs)), out, false, chunk, null);
+		return out.toString();
+	}
+}
@@ -0,0 +1,43 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.OWLClass;
+
+/* topK against simNec of c1 with every class of o2, sorted */
+class SimilaritySearchTest {
+
+	@Test
+	void topKMatchesExhaustiveRanking() throws Exception {
+		Random random = new Random(23);
+		for (int round = 0; round < 4; round++) {
+			// two ontologies of the same classes with different hierarchies, every class labelled by its name
+			OntologyIndex o1 = new OntologyIndex(TestOntologies.randomOntology(200, round, false));
+			OntologyIndex o2 = round % 2 == 0 ? o1 : OntologyIndex.withHubLabels(TestOntologies.randomOntology(180, round + 100, false));
+
+			for (int query = 0; query < 20; query++) {
+				OWLClass c1 = o1.getClasses().get(random.nextInt(o1.getClasses().size()));
+				int k = 1 + random.nextInt(10);
+
+				// (similarity, id) of every class with an LCS, most similar then smallest id first
+				List<float[]> all = new ArrayList<>();
+				for (OWLClass c2 : o2.getClasses())
+					if ((o1 != o2 || !c2.equals(c1)) && (o1.getName(c1).equals(o2.getName(c2)) || App.getLCS(o1, o2, c1, c2) != null))
+						all.add(new float[] { App.simNec(o1, o2, c1, c2), o2.getId(c2) });
+				all.sort((x, y) -> x[0] != y[0] ? Float.compare(y[0], x[0]) : Float.compare(x[1], y[1]));
+
+				List<ClassSimilarity> top = SimilaritySearch.topK(o1, c1, o2, k);
+				assertEquals(Math.min(k, all.size()), top.size());
+				for (int i = 0; i < top.size(); i++) {
+					assertEquals(all.get(i)[0], top.get(i).getSimilarity(), c1 + " rank " + i);
+					assertEquals((int) all.get(i)[1], o2.getId(top.get(i).getCls()), c1 + " rank " + i);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package msc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/* Answers and status codes of SimilarityServer */
+class SimilarityServerTest {
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	@Test
+	void registeredOntologiesAreQueried() throws Exception {
+		OntologyIndex index = new OntologyIndex(TestOntologies.randomOntology(50, 1));
+		OWLDataFactory df = OWLManager.getOWLDataFactory();
+		SimilarityServer server = new SimilarityServer(0);
+		server.register("o", index);
+		server.start();
+		try {
+			// every class of the random ontology is below C0, so that any pair has an LCS
+			HttpResponse<String> simNec = get(server, "/simNec?o1=o&o2=o&c1=C10&c2=C20");
+			assertEquals(200, simNec.statusCode());
+			assertEquals("{\"simNec\": " + App.simNec(index, index, TestOntologies.getClass(df, 10), TestOntologies.getClass(df, 20)) + "}", simNec.body());
+			assertEquals("{\"o\": {\"classes\": " + index.getClasses().size() + "}}", get(server, "/ontologies").body());
+
+			assertEquals(404, get(server, "/simNec?o1=o&o2=o&c1=C10&c2=C99").statusCode());
+			assertEquals(404, get(server, "/simNec?o1=x&o2=o&c1=C10&c2=C20").statusCode());
+			assertEquals(400, get(server, "/simNec?o1=o&o2=o&c1=C10").statusCode());
+			assertEquals(400, get(server, "/topk?o1=o&o2=o&c1=C10&k=ten").statusCode());
+			assertEquals(405, get(server, "/load?name=r&file=random.owl").statusCode());
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void onlyUndefinedPairsAre422() throws Exception {
+		// C2 and C4 are below two roots C0 and C1 that have no common subsumer
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		OWLOntology o = manager.createOntology();
+		manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, 2), TestOntologies.getClass(df, 0)));
+		manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, 3), TestOntologies.getClass(df, 2)));
+		manager.addAxiom(o, df.getOWLSubClassOfAxiom(TestOntologies.getClass(df, 4), TestOntologies.getClass(df, 1)));
+
+		SimilarityServer server = new SimilarityServer(0);
+		server.register("o", new OntologyIndex(o));
+		server.start();
+		try {
+			assertEquals(200, get(server, "/simNec?o1=o&o2=o&c1=C3&c2=C2").statusCode());
+			HttpResponse<String> undefined = get(server, "/simNec?o1=o&o2=o&c1=C3&c2=C4");
+			assertEquals(422, undefined.statusCode());
+			assertTrue(undefined.body().contains("No common subsumer"));
+			assertEquals(422, get(server, "/distance?o1=o&o2=o&c1=C3&c2=C4").statusCode());
+			assertEquals(404, get(server, "/simNec?o1=o&o2=o&c1=C3&c2=C9").statusCode());
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void loadIsRestrictedToJsonRequestsInTheLoadDirectory() throws Exception {
+		Path directory = Files.createTempDirectory("msc");
+		Path file = directory.resolve("random.msch"), outside = Files.createTempFile("msc", ".msch");
+		HierarchySnapshot snapshot = HierarchySnapshot.of(TestOntologies.randomOntology(50, 1));
+		snapshot.write(file);
+		snapshot.write(outside);
+
+		SimilarityServer server = new SimilarityServer(0, directory), closed = new SimilarityServer(0);
+		server.start();
+		closed.start();
+		try {
+			// what a cross-origin form can send without a preflight
+			assertEquals(415, post(server, "/load?name=r&file=random.msch", "text/plain").statusCode());
+			assertEquals(403, post(closed, "/load?name=r&file=" + file, "application/json").statusCode());
+			assertEquals(403, post(server, "/load?name=r&file=" + outside, "application/json").statusCode());
+			assertEquals(403, post(server, "/load?name=r&file=../" + outside.getFileName(), "application/json").statusCode());
+			assertEquals(404, post(server, "/load?name=r&file=missing.msch", "application/json").statusCode());
+			// urls other than http and https would read local files
+			assertEquals(403, post(closed, "/load?name=r&url=file://" + file, "application/json").statusCode());
+			assertEquals(403, post(server, "/load?name=r&url=jar:file://" + file + "!/", "application/json").statusCode());
+			assertEquals(403, post(server, "/load?name=r&url=http:random.msch", "application/json").statusCode());
+			assertEquals(400, post(server, "/load?name=r&url=::", "application/json").statusCode());
+			assertNull(server.getOntology("r"));
+
+			assertEquals(200, post(server, "/load?name=r&file=random.msch", "application/json; charset=utf-8").statusCode());
+			assertEquals(snapshot.getClasses().size(), server.getOntology("r").getClasses().size());
+		}
+		finally {
+			server.stop(0);
+			closed.stop(0);
+			Files.delete(file);
+			Files.delete(directory);
+			Files.delete(outside);
+		}
+	}
+
+	private HttpResponse<String> get(SimilarityServer server, String path) throws IOException, InterruptedException {
+		return client.send(HttpRequest.newBuilder(uri(server, path)).build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private HttpResponse<String> post(SimilarityServer server, String path, String contentType) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(uri(server, path)).header("Content-Type", contentType)
+				.POST(HttpRequest.BodyPublishers.noBody()).build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static URI uri(SimilarityServer server, String path) {
+		return URI.create("http://localhost:" + server.getPort() + path);
+	}
+}
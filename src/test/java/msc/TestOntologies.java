@@ -0,0 +1,110 @@
+package msc;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/* Random hierarchies shared by the tests. Weights are small integers like
+ * necessity weights, so that distances summed in any order are exact and
+ * can be compared with ==.
+ */
+final class TestOntologies {
+
+	static final String NAMESPACE = "http://msc.test/random";
+
+	private TestOntologies() {
+	}
+
+	// DAG of n classes where class i has 1 to 3 superclasses among the classes before it
+	static HierarchyGraph randomDag(int n, long seed) {
+		Random random = new Random(seed);
+		int[] sources = new int[3 * n], targets = new int[3 * n];
+		float[] weights = new float[3 * n];
+		int m = 0;
+		for (int i = 1; i < n; i++)
+			for (int k = 1 + random.nextInt(3); k > 0; k--) {
+				sources[m] = i;
+				targets[m] = random.nextInt(i);
+				weights[m++] = 1 + random.nextInt(4);
+			}
+		return HierarchyGraph.fromEdges(names(n), sources, targets, weights, m);
+	}
+
+	// Graph of n classes with edges random in both directions, so that it usually has cycles
+	static HierarchyGraph randomGraph(int n, int edges, long seed) {
+		Random random = new Random(seed);
+		int[] sources = new int[edges], targets = new int[edges];
+		float[] weights = new float[edges];
+		int m = 0;
+		for (int e = 0; e < edges; e++) {
+			int source = random.nextInt(n), target = random.nextInt(n);
+			if (source != target) {
+				sources[m] = source;
+				targets[m] = target;
+				weights[m++] = 1 + random.nextInt(4);
+			}
+		}
+		return HierarchyGraph.fromEdges(names(n), sources, targets, weights, m);
+	}
+
+	private static String[] names(int n) {
+		String[] names = new String[n];
+		for (int i = 0; i < n; i++)
+			names[i] = "C" + i;
+		return names;
+	}
+
+	/* Ontology of the classes C0..C(n-1) below C0, where Ci has 1 to 3
+	 * superclasses among the classes before it. One class in three has a
+	 * label, shared with a few other classes, the others go by their name.
+	 */
+	static OWLOntology randomOntology(int n, long seed) throws OWLOntologyCreationException {
+		return randomOntology(n, seed, true);
+	}
+
+	// Same ontology where every class goes by its name when labelled is false
+	static OWLOntology randomOntology(int n, long seed, boolean labelled) throws OWLOntologyCreationException {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		OWLOntology o = manager.createOntology(IRI.create(NAMESPACE + "-" + n + "-" + seed));
+		Random random = new Random(seed);
+
+		Set<OWLAxiom> axioms = new HashSet<>();
+		axioms.add(df.getOWLDeclarationAxiom(getClass(df, 0)));
+		for (int i = 1; i < n; i++) {
+			for (int k = 1 + random.nextInt(3); k > 0; k--)
+				axioms.add(df.getOWLSubClassOfAxiom(getClass(df, i), getClass(df, random.nextInt(i))));
+			if (labelled && i % 3 == 0)
+				axioms.add(label(df, getClass(df, i), "label " + random.nextInt(Math.max(1, n / 10))));
+		}
+		manager.addAxioms(o, axioms);
+		return o;
+	}
+
+	static OWLClass getClass(OWLDataFactory df, int i) {
+		return df.getOWLClass(IRI.create(NAMESPACE + "#C" + i));
+	}
+
+	static OWLAxiom label(OWLDataFactory df, OWLClass cls, String label) {
+		return df.getOWLAnnotationAssertionAxiom(cls.getIRI(), df.getOWLAnnotation(df.getRDFSLabel(), df.getOWLLiteral(label)));
+	}
+
+	// Names of classes in order, to compare the classes of indexes whose ids differ
+	static Set<String> names(Collection<OWLClass> classes) {
+		Set<String> names = new TreeSet<>();
+		for (OWLClass cls : classes)
+			names.add(cls.getIRI().getFragment());
+		return names;
+	}
+}